@@ -0,0 +1,42 @@
+package hr.fer.ztel.rassus.dz2.benchmark;
+
+import hr.fer.ztel.rassus.dz2.model.Measurement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of parsing a line of the measurements file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeasurementParseBenchmark {
+
+    /** Lines with all fields present and with missing fields. */
+    private final String[] lines = {
+            "32,1000,42,70,676,,",
+            "34,1001,35,174,478,,",
+            "25,1003,54,,,12,",
+            "-4,998,81,1023,99,7,"
+    };
+    private int next;
+
+    @Benchmark
+    public Measurement parseFromCSV() {
+        String line = lines[next];
+        next = (next + 1) & (lines.length - 1);
+        return Measurement.parseFromCSV(line);
+    }
+}
@@ -0,0 +1,93 @@
+package hr.fer.ztel.rassus.dz2.benchmark;
+
+import hr.fer.ztel.rassus.dz2.model.Measurement;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+import hr.fer.ztel.rassus.dz2.thread.Node;
+import hr.fer.ztel.rassus.dz2.timestamp.ScalarTimestamp;
+import hr.fer.ztel.rassus.dz2.timestamp.VectorTimestamp;
+import hr.fer.ztel.rassus.dz2.transport.LoopbackTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of storing received measurements in a node, with 1 to 16
+ * receiving threads contending for the clocks of the same node. The node
+ * is never started, so no packets are sent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeBenchmark {
+
+    @Param({"4", "64"})
+    private int nodes;
+
+    private Node node;
+    private Measurement measurement;
+    private VectorTimestamp[] received;
+
+    @Setup
+    public void setup() {
+        List<SocketAddress> neighbours = new ArrayList<>();
+        for (int i = 1; i < nodes; i++) {
+            neighbours.add(LoopbackTransport.address(10001 + i));
+        }
+        node = new Node("node1", 10001, 0, 1, 0, neighbours, new LoopbackTransport());
+        measurement = Measurement.parseFromCSV("32,1000,42,70,676,,");
+
+        // Timestamps as received from the other nodes
+        received = new VectorTimestamp[nodes];
+        for (int i = 0; i < nodes; i++) {
+            int[] values = new int[nodes];
+            values[i] = i + 1;
+            received[i] = new VectorTimestamp(values);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public TimestampedMeasurement store1() {
+        return store();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public TimestampedMeasurement store4() {
+        return store();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public TimestampedMeasurement store8() {
+        return store();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public TimestampedMeasurement store16() {
+        return store();
+    }
+
+    private TimestampedMeasurement store() {
+        VectorTimestamp vector = received[ThreadLocalRandom.current().nextInt(nodes)];
+        return node.storeMeasurement(1, measurement, new ScalarTimestamp(0), vector);
+    }
+}
@@ -0,0 +1,89 @@
+package hr.fer.ztel.rassus.dz2.benchmark;
+
+import hr.fer.ztel.rassus.dz2.codec.PacketCodec;
+import hr.fer.ztel.rassus.dz2.codec.PacketCodecs;
+import hr.fer.ztel.rassus.dz2.model.Measurement;
+import hr.fer.ztel.rassus.dz2.model.MeasurementPacket;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+import hr.fer.ztel.rassus.dz2.timestamp.ScalarTimestamp;
+import hr.fer.ztel.rassus.dz2.timestamp.VectorTimestamp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of encoding and decoding a measurement packet in each wire format,
+ * by number of nodes in the vector timestamp and measurements per packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketCodecBenchmark {
+
+    @Param({"JSON", "BINARY"})
+    private PacketCodecs.Format format;
+
+    @Param({"4", "64"})
+    private int nodes;
+
+    @Param({"1", "16"})
+    private int batch;
+
+    private PacketCodec codec;
+    private MeasurementPacket packet;
+    private ByteBuffer encodeBuffer;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        List<TimestampedMeasurement> measurements = new ArrayList<>(batch);
+        for (int m = 0; m < batch; m++) {
+            int[] values = new int[nodes];
+            for (int i = 0; i < nodes; i++) {
+                values[i] = random.nextInt(10_000);
+            }
+            measurements.add(new TimestampedMeasurement(
+                    Measurement.parseFromCSV("32,1000,42,70,676,,"),
+                    new ScalarTimestamp(System.currentTimeMillis() + m),
+                    new VectorTimestamp(values)));
+        }
+
+        codec = format.getCodec();
+        packet = new MeasurementPacket(0, System.currentTimeMillis(), 12345, 0, measurements);
+        encodeBuffer = ByteBuffer.allocate(PacketCodecs.MAX_PACKET_SIZE);
+
+        codec.encode(packet, encodeBuffer);
+        encodeBuffer.flip();
+        encoded = ByteBuffer.allocate(encodeBuffer.remaining());
+        encoded.put(encodeBuffer).flip();
+    }
+
+    @Benchmark
+    public int encode() {
+        encodeBuffer.clear();
+        codec.encode(packet, encodeBuffer);
+        return encodeBuffer.position();
+    }
+
+    @Benchmark
+    public MeasurementPacket decode() {
+        return codec.decode(encoded.duplicate());
+    }
+}
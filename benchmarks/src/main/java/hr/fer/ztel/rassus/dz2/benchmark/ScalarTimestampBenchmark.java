@@ -0,0 +1,78 @@
+package hr.fer.ztel.rassus.dz2.benchmark;
+
+import hr.fer.ztel.rassus.dz2.timestamp.ScalarTimestamp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of ordering measurements by their scalar timestamps in a
+ * {@link TreeMap}, by number of measurements in a window.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalarTimestampBenchmark {
+
+    @Param({"100", "10000"})
+    private int size;
+
+    private ScalarTimestamp[] timestamps;
+    private TreeMap<ScalarTimestamp, Integer> sorted;
+
+    @Setup
+    public void setup() {
+        // Timestamps of nodes with slightly different clocks, mostly increasing
+        Random random = new Random(42);
+        timestamps = new ScalarTimestamp[size];
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            timestamps[i] = new ScalarTimestamp(time + i * 10 + random.nextInt(200) - 100);
+        }
+
+        sorted = fill();
+    }
+
+    @Benchmark
+    public TreeMap<ScalarTimestamp, Integer> insert() {
+        return fill();
+    }
+
+    @Benchmark
+    public long iterate() {
+        long sum = 0;
+        for (Map.Entry<ScalarTimestamp, Integer> entry : sorted.descendingMap().entrySet()) {
+            sum += entry.getKey().getValue() + entry.getValue();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public ScalarTimestamp lookup() {
+        return sorted.floorKey(timestamps[size / 2]);
+    }
+
+    private TreeMap<ScalarTimestamp, Integer> fill() {
+        TreeMap<ScalarTimestamp, Integer> map = new TreeMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put(timestamps[i], i);
+        }
+        return map;
+    }
+}
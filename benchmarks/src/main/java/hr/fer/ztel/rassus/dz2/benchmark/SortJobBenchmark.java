@@ -0,0 +1,93 @@
+package hr.fer.ztel.rassus.dz2.benchmark;
+
+import hr.fer.ztel.rassus.dz2.aggregate.WindowSummary;
+import hr.fer.ztel.rassus.dz2.aggregate.WindowedAggregator;
+import hr.fer.ztel.rassus.dz2.model.Measurement;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+import hr.fer.ztel.rassus.dz2.timestamp.CausalSorter;
+import hr.fer.ztel.rassus.dz2.timestamp.ScalarTimestamp;
+import hr.fer.ztel.rassus.dz2.timestamp.VectorTimestamp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Cost of the steps of the periodic sort job of a node for one window of
+ * measurements: closing the CO aggregation window, and sorting the window
+ * by scalar and by vector timestamps for debug listings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortJobBenchmark {
+
+    private static final long MAX_AGGREGATED_VALUE = 1 << 20;
+
+    @Param({"4", "64"})
+    private int nodes;
+
+    /** Measurements in a window, 5 seconds of one measurement per node per second. */
+    private List<TimestampedMeasurement> window;
+    private WindowedAggregator aggregator;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        int size = 5 * nodes;
+        long time = System.currentTimeMillis();
+        int[] clock = new int[nodes];
+
+        window = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            clock[random.nextInt(nodes)]++;
+            window.add(new TimestampedMeasurement(
+                    Measurement.builder().co(random.nextInt(1000)).build(),
+                    new ScalarTimestamp(time + random.nextInt(5000)),
+                    new VectorTimestamp(clock)));
+        }
+        aggregator = new WindowedAggregator(MAX_AGGREGATED_VALUE);
+    }
+
+    /** Records the window into the aggregator and closes the aggregation window. */
+    @Benchmark
+    public WindowSummary aggregate() {
+        for (TimestampedMeasurement m : window) {
+            aggregator.record(m.getMeasurement().getCo());
+        }
+        return aggregator.rotate();
+    }
+
+    @Benchmark
+    public List<String> sortScalar() {
+        return window.stream()
+                .sorted(Comparator.comparing(TimestampedMeasurement::getScalarTimestamp).reversed())
+                .map(m -> m.getScalarTimestamp() + "=" + m.getMeasurement())
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<CausalSorter.Event<Measurement>> sortVector() {
+        CausalSorter<Measurement> sorter = new CausalSorter<>();
+        for (TimestampedMeasurement m : window) {
+            sorter.add(m.getVectorTimestamp(), m.getMeasurement());
+        }
+        return sorter.drain();
+    }
+}
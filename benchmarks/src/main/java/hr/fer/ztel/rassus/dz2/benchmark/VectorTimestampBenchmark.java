@@ -0,0 +1,80 @@
+package hr.fer.ztel.rassus.dz2.benchmark;
+
+import hr.fer.ztel.rassus.dz2.timestamp.VectorClock;
+import hr.fer.ztel.rassus.dz2.timestamp.VectorTimestamp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of merging a received vector timestamp into the local clock, by
+ * number of nodes in the cluster.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorTimestampBenchmark {
+
+    @Param({"4", "64", "1024"})
+    private int nodes;
+
+    private VectorTimestamp local;
+    private VectorTimestamp received;
+    private VectorClock clock;
+    private int[] target;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        int[] localValues = new int[nodes];
+        int[] receivedValues = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            localValues[i] = random.nextInt(1000);
+            receivedValues[i] = random.nextInt(1000);
+        }
+
+        local = new VectorTimestamp(localValues);
+        received = new VectorTimestamp(receivedValues);
+        clock = new VectorClock(nodes);
+        target = localValues.clone();
+    }
+
+    /** Merge that allocates a new timestamp, as done per event before the mutable clock. */
+    @Benchmark
+    public VectorTimestamp combine() {
+        return VectorTimestamp.combine(local, received, 0, 1);
+    }
+
+    /** Allocation-free merge into an array. */
+    @Benchmark
+    public int[] mergeInto() {
+        received.mergeInto(target, 0, 1);
+        return target;
+    }
+
+    /** Merge into the mutable clock followed by the snapshot taken when a measurement is stored. */
+    @Benchmark
+    public VectorTimestamp mergeAndSnapshot() {
+        clock.merge(received, 0, 1);
+        return clock.snapshot();
+    }
+
+    @Benchmark
+    public int compareTo() {
+        return local.compareTo(received);
+    }
+}
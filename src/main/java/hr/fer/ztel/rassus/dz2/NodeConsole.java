@@ -1,6 +1,7 @@
 package hr.fer.ztel.rassus.dz2;
 
 import hr.fer.ztel.rassus.dz2.thread.Node;
+import hr.fer.ztel.rassus.dz2.util.Settings;
 import hr.fer.ztel.rassus.dz2.util.Utility;
 import lombok.extern.log4j.Log4j2;
 
@@ -14,9 +15,16 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Log4j2
@@ -24,6 +32,8 @@ public class NodeConsole {
 
     private static final Path NETWORK_CONFIG_PATH = Paths.get("src/main/resources/network.config");
     private static final String NODE_HOSTNAME = "localhost";
+    /** Interval between two checks of the network configuration for changes, in milliseconds. */
+    private static final long RELOAD_INTERVAL_MILLIS = Settings.getLong(Settings.MEMBERSHIP_RELOAD_INTERVAL, 5000);
 
     /**
      * Client program entry point.
@@ -43,6 +53,7 @@ public class NodeConsole {
             log.error("Port {} is already in use.");
             return;
         }
+        watchNetworkConfig(node);
 
         // Print out the welcome text
         System.out.println("Welcome to node management interface of " + name + ".");
@@ -94,12 +105,7 @@ public class NodeConsole {
     }
 
     private static Node createNode(String name) throws IOException {
-        // Read all lines from config and store all nodes in a map;
-        // Map: key=<NodeName>, value=<NodeLine>
-        List<String> lines = Files.readAllLines(NETWORK_CONFIG_PATH, StandardCharsets.UTF_8);
-        Map<String, String> allNodeLines = lines.stream()
-                .filter(line -> !line.isEmpty())
-                .collect(Collectors.toMap(l -> l.split("\\s+")[0], l -> l));
+        Map<String, String> allNodeLines = readNodeLines();
 
         // Get node with specified name
         String line = allNodeLines.get(name);
@@ -109,14 +115,7 @@ public class NodeConsole {
 
         // Remove specified node, leaving a map with only neighbouring nodes
         allNodeLines.remove(name);
-
-        // Map neighbouring nodes to SocketAddress objects
-        final InetAddress nodeAddress = InetAddress.getByName(NODE_HOSTNAME);
-        List<SocketAddress> neighbourNodes = allNodeLines.values().stream()
-                .map(l -> l.split("\\s+")[2])
-                .map(Integer::parseInt)
-                .map(port -> new InetSocketAddress(nodeAddress, port))
-                .collect(Collectors.toList());
+        List<SocketAddress> neighbourNodes = new ArrayList<>(toNeighbours(allNodeLines.values()).keySet());
 
         // Finally create the node
         String[] tokens = line.split("\\s+");
@@ -127,4 +126,64 @@ public class NodeConsole {
         return new Node(name, port, lossRate, averageDelay, index, neighbourNodes);
     }
 
+    /**
+     * Reads all lines from config and stores all nodes in a map;
+     * Map: key=&lt;NodeName&gt;, value=&lt;NodeLine&gt;
+     */
+    private static Map<String, String> readNodeLines() throws IOException {
+        List<String> lines = Files.readAllLines(NETWORK_CONFIG_PATH, StandardCharsets.UTF_8);
+        return lines.stream()
+                .filter(line -> !line.isEmpty())
+                .collect(Collectors.toMap(l -> l.split("\\s+")[0], l -> l));
+    }
+
+    /**
+     * Maps lines of neighbouring nodes to their indices, by their address.
+     */
+    private static Map<SocketAddress, Integer> toNeighbours(Collection<String> nodeLines) throws IOException {
+        final InetAddress nodeAddress = InetAddress.getByName(NODE_HOSTNAME);
+        Map<SocketAddress, Integer> neighbours = new LinkedHashMap<>();
+        for (String line : nodeLines) {
+            String[] tokens = line.split("\\s+");
+            neighbours.put(new InetSocketAddress(nodeAddress, Integer.parseInt(tokens[2])), Integer.parseInt(tokens[1]));
+        }
+        return neighbours;
+    }
+
+    /**
+     * Updates the membership of the node whenever the network configuration
+     * changes, so that nodes can join and leave without restarting the others.
+     */
+    private static void watchNetworkConfig(Node node) throws IOException {
+        if (RELOAD_INTERVAL_MILLIS <= 0) {
+            return;
+        }
+
+        ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ConfigWatcher-" + node.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        FileTime[] lastModified = {Files.getLastModifiedTime(NETWORK_CONFIG_PATH)};
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                FileTime modified = Files.getLastModifiedTime(NETWORK_CONFIG_PATH);
+                if (modified.equals(lastModified[0])) {
+                    return;
+                }
+                lastModified[0] = modified;
+
+                Map<String, String> allNodeLines = readNodeLines();
+                if (allNodeLines.remove(node.getName()) == null) {
+                    log.warn("Node {} was removed from the network configuration, ignoring the change", node.getName());
+                    return;
+                }
+                node.getMembership().updateTopology(toNeighbours(allNodeLines.values()));
+                log.info("Reloaded network configuration with {} neighbours", allNodeLines.size());
+            } catch (IOException | RuntimeException e) {
+                log.error("Unable to reload network configuration", e);
+            }
+        }, RELOAD_INTERVAL_MILLIS, RELOAD_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
 }
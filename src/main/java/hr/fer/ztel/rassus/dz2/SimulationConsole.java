@@ -0,0 +1,107 @@
+package hr.fer.ztel.rassus.dz2;
+
+import hr.fer.ztel.rassus.dz2.thread.Node;
+import hr.fer.ztel.rassus.dz2.transport.LoopbackTransport;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a whole network of nodes in a single JVM, connected with a
+ * {@link LoopbackTransport} instead of UDP sockets. Every node gets the same
+ * loss rate and average delay.
+ */
+@Log4j2
+public class SimulationConsole {
+
+    private static final int DEFAULT_NODE_COUNT = 200;
+    private static final double DEFAULT_LOSS_RATE = 0.1;
+    private static final int DEFAULT_AVERAGE_DELAY = 100;
+    /** Port of the first node, the other nodes get consecutive ports. */
+    private static final int FIRST_PORT = 10001;
+
+    /**
+     * Simulation program entry point.
+     *
+     * @param args number of nodes, loss rate and average delay, all optional
+     */
+    public static void main(String[] args) throws IOException {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NODE_COUNT;
+        double lossRate = args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_LOSS_RATE;
+        int averageDelay = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_AVERAGE_DELAY;
+
+        List<Node> nodes = createNodes(new LoopbackTransport(), nodeCount, lossRate, averageDelay);
+
+        // Print out the welcome text
+        System.out.println("Welcome to simulation of " + nodeCount + " nodes.");
+        System.out.println("Enter 'START' to trigger all nodes or 'EXIT' to shutdown all nodes.");
+
+        // Start the command prompt, listen for user input and loop through it
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            l:
+            while (true) {
+                System.out.print("> ");
+
+                String command = reader.readLine();
+                if (command == null) break;
+                if (command.trim().isEmpty()) continue;
+
+                switch (command.toUpperCase()) {
+                    case "START":
+                        nodes.forEach(Node::startNode);
+                        break;
+
+                    case "EXIT":
+                        nodes.forEach(Node::shutdown);
+                        break l;
+
+                    default:
+                        System.out.println("Unknown command: " + command);
+                }
+            }
+
+            reader.close();
+            System.out.println("Simulation has shut down. Goodbye!");
+        } catch (Exception e) {
+            System.out.println("A critical error occurred... shutting down all nodes.");
+            nodes.forEach(node -> {
+                try { node.shutdown(); } catch (Exception ignorable) {}
+            });
+            throw e;
+        }
+    }
+
+    /**
+     * Creates nodes named <tt>node1</tt> to <tt>nodeN</tt> on consecutive
+     * ports of the given transport, each having all others as neighbours.
+     *
+     * @param transport transport connecting the nodes
+     * @param nodeCount number of nodes
+     * @param lossRate packet loss ratio of every node
+     * @param averageDelay average delay of every node, in milliseconds
+     * @return the created nodes, ordered by their index
+     */
+    public static List<Node> createNodes(LoopbackTransport transport, int nodeCount, double lossRate, int averageDelay) {
+        List<SocketAddress> addresses = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            addresses.add(LoopbackTransport.address(FIRST_PORT + i));
+        }
+
+        List<Node> nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            List<SocketAddress> neighbourNodes = new ArrayList<>(addresses);
+            neighbourNodes.remove(i);
+            nodes.add(new Node("node" + (i + 1), FIRST_PORT + i, lossRate, averageDelay, i, neighbourNodes, transport));
+        }
+
+        log.info("Created {} nodes on loopback transport", nodeCount);
+        return nodes;
+    }
+}
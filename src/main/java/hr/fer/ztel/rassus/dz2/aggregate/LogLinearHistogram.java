@@ -0,0 +1,129 @@
+package hr.fer.ztel.rassus.dz2.aggregate;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values with bounded relative error,
+ * in the style of HdrHistogram. Values below <tt>2^precisionBits</tt> are
+ * counted exactly; larger values fall into buckets whose width grows with
+ * the power of two of the value, so that every bucket is at most
+ * <tt>1 / 2^precisionBits</tt> of its values wide. Recording is a single
+ * atomic increment and memory use is fixed at construction.
+ */
+public class LogLinearHistogram {
+
+    private final int precisionBits;
+    private final int subBuckets;
+    private final long maxValue;
+    private final AtomicLongArray counts;
+
+    /**
+     * Creates a histogram.
+     *
+     * @param precisionBits number of bits of precision, 6 gives about 1.6% error
+     * @param maxValue largest value that can be told apart, larger values are clamped
+     */
+    public LogLinearHistogram(int precisionBits, long maxValue) {
+        if (precisionBits < 1 || precisionBits > 16 || maxValue < 1) {
+            throw new IllegalArgumentException("Invalid histogram parameters.");
+        }
+
+        this.precisionBits = precisionBits;
+        this.subBuckets = 1 << precisionBits;
+        this.maxValue = maxValue;
+        this.counts = new AtomicLongArray(indexOf(maxValue) + 1);
+    }
+
+    /**
+     * Records a value. Negative values are recorded as zero and values
+     * above the maximum as the maximum.
+     *
+     * @param value the value
+     */
+    public void record(long value) {
+        counts.incrementAndGet(indexOf(Math.max(0, Math.min(value, maxValue))));
+    }
+
+    /**
+     * Returns the total number of recorded values. The result is not an
+     * atomic snapshot if values are recorded concurrently.
+     *
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0, n = counts.length(); i < n; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the value at the given quantile, which is the upper bound of the
+     * bucket holding it, or 0 if nothing has been recorded.
+     *
+     * @param quantile quantile between 0 and 1
+     * @return the value at the quantile
+     */
+    public long getValueAtQuantile(double quantile) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Adds all counts of the other histogram, which must have the same
+     * parameters, to this one.
+     *
+     * @param other histogram with the same parameters
+     */
+    public void add(LogLinearHistogram other) {
+        if (other.precisionBits != precisionBits || other.maxValue != maxValue) {
+            throw new IllegalArgumentException("Histograms have different parameters.");
+        }
+
+        for (int i = 0, n = counts.length(); i < n; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    private int indexOf(long value) {
+        if (value < subBuckets) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - precisionBits;
+        int sub = (int) (value >>> shift) & (subBuckets - 1);
+        return subBuckets + shift * subBuckets + sub;
+    }
+
+    private long upperBoundOf(int index) {
+        if (index < subBuckets) {
+            return index;
+        }
+
+        int shift = index / subBuckets - 1;
+        int sub = index % subBuckets;
+        return ((long) (subBuckets + sub) << shift) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,31 @@
+package hr.fer.ztel.rassus.dz2.aggregate;
+
+import lombok.Value;
+
+/**
+ * Immutable summary of the values recorded in one aggregation window.
+ */
+@Value
+public class WindowSummary {
+
+    /** Time when the window was opened, in milliseconds. */
+    private final long startTime;
+    private final long count;
+    private final long sum;
+    /** Smallest value, or 0 if the window is empty. */
+    private final long min;
+    /** Largest value, or 0 if the window is empty. */
+    private final long max;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+
+    /**
+     * Returns the average value, or NaN if the window is empty.
+     *
+     * @return the average value
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : (double) sum / count;
+    }
+}
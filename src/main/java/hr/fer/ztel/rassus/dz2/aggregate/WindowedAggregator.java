@@ -0,0 +1,126 @@
+package hr.fer.ztel.rassus.dz2.aggregate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running aggregates of a stream of values over tumbling windows. Every
+ * recorded value updates the count, sum, minimum, maximum and a quantile
+ * histogram of the current window in constant time, so a summary of the
+ * current window is available at any time without rescanning the values,
+ * and closing a window costs the same regardless of how many values it holds.
+ * <p>
+ * Recording is lock-free. {@link #rotate()} swaps in a new window and then
+ * waits for recorders that already entered the old one, so every value is
+ * counted in exactly one published window.
+ */
+public class WindowedAggregator {
+
+    /** Histogram precision, about 1.6% relative error. */
+    private static final int PRECISION_BITS = 6;
+
+    private final long maxValue;
+    private final AtomicReference<Window> current;
+    private volatile WindowSummary last;
+
+    /**
+     * Creates an aggregator.
+     *
+     * @param maxValue largest value told apart by quantiles, larger values are clamped
+     */
+    public WindowedAggregator(long maxValue) {
+        this.maxValue = maxValue;
+        this.current = new AtomicReference<>(new Window());
+    }
+
+    /**
+     * Records a value in the current window.
+     *
+     * @param value the value
+     */
+    public void record(long value) {
+        while (true) {
+            Window window = current.get();
+            window.writers.incrementAndGet();
+            try {
+                if (current.get() == window) {
+                    window.record(value);
+                    return;
+                }
+            } finally {
+                window.writers.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Closes the current window, opens a new one and returns the summary of
+     * the closed window.
+     *
+     * @return summary of the closed window
+     */
+    public WindowSummary rotate() {
+        Window closed = current.getAndSet(new Window());
+        while (closed.writers.get() != 0) {
+            Thread.yield();
+        }
+
+        last = closed.summarize();
+        return last;
+    }
+
+    /**
+     * Returns the summary of the values recorded in the current window so far.
+     *
+     * @return summary of the current window
+     */
+    public WindowSummary getCurrent() {
+        return current.get().summarize();
+    }
+
+    /**
+     * Returns the summary of the last closed window, or <tt>null</tt> if no
+     * window has been closed yet.
+     *
+     * @return summary of the last closed window
+     */
+    public WindowSummary getLast() {
+        return last;
+    }
+
+    private class Window {
+        private final long startTime = System.currentTimeMillis();
+        /** Number of recorders currently inside this window. */
+        private final AtomicInteger writers = new AtomicInteger();
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        private final LogLinearHistogram histogram = new LogLinearHistogram(PRECISION_BITS, maxValue);
+
+        private void record(long value) {
+            count.increment();
+            sum.add(value);
+            min.accumulate(value);
+            max.accumulate(value);
+            histogram.record(value);
+        }
+
+        private WindowSummary summarize() {
+            long n = count.sum();
+            long lo = n == 0 ? 0 : min.get();
+            long hi = n == 0 ? 0 : max.get();
+            // Bucket bounds are clamped to the exact extremes
+            return new WindowSummary(startTime, n, sum.sum(), lo, hi,
+                    clamp(histogram.getValueAtQuantile(0.5), lo, hi),
+                    clamp(histogram.getValueAtQuantile(0.9), lo, hi),
+                    clamp(histogram.getValueAtQuantile(0.99), lo, hi));
+        }
+
+        private long clamp(long value, long lo, long hi) {
+            return Math.max(lo, Math.min(hi, value));
+        }
+    }
+}
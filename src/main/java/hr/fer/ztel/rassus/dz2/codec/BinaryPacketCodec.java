@@ -0,0 +1,169 @@
+package hr.fer.ztel.rassus.dz2.codec;
+
+import hr.fer.ztel.rassus.dz2.model.Measurement;
+import hr.fer.ztel.rassus.dz2.model.MeasurementField;
+import hr.fer.ztel.rassus.dz2.model.MeasurementPacket;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+import hr.fer.ztel.rassus.dz2.timestamp.ScalarTimestamp;
+import hr.fer.ztel.rassus.dz2.timestamp.VectorTimestamp;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary codec with a fixed field layout:
+ * <pre>
+ * byte     version
+ * varint   sender index
+ * varlong  epoch of the sender
+ * varlong  sequence number
+ * varint   remaining gossip rounds
+ * varint   number of measurements, each followed by:
+ *   byte     bitmap of present measurement fields, bit i for field i
+ *   varint   zig-zag encoded value of each present field
+ *   varlong  zig-zag encoded scalar timestamp
+ *   varint   vector timestamp cardinality
+ *   varint   each vector timestamp component
+ * </pre>
+ * Vector timestamp components are small event counters, so a measurement
+ * grows by only one or two bytes per node in the cluster.
+ * <p>
+ * Packets of other layout versions are rejected as invalid. Nodes do not
+ * negotiate a format with peers of an older version, since those also
+ * differ in their confirmations and heartbeats and cannot join the
+ * cluster either way.
+ */
+public class BinaryPacketCodec implements PacketCodec {
+
+    /** Version of the layout written by this codec. */
+    public static final byte VERSION = 4;
+    /** Version byte, varint sender, varlong epoch and sequence, varint rounds and count. */
+    private static final int MAX_HEADER_SIZE = 1 + 5 + 10 + 10 + 5 + 5;
+
+    @Override
+    public void encode(MeasurementPacket packet, ByteBuffer buffer) {
+        buffer.put(VERSION);
+        VarInts.putVarInt(buffer, packet.getSender());
+        VarInts.putVarLong(buffer, packet.getEpoch());
+        VarInts.putVarLong(buffer, packet.getSequence());
+        VarInts.putVarInt(buffer, packet.getRounds());
+
+        List<TimestampedMeasurement> measurements = packet.getMeasurements();
+        VarInts.putVarInt(buffer, measurements.size());
+        for (TimestampedMeasurement measurement : measurements) {
+            encodeMeasurement(measurement, buffer);
+        }
+    }
+
+    private static void encodeMeasurement(TimestampedMeasurement timestamped, ByteBuffer buffer) {
+        // Only fields that have a value are written
+        Measurement measurement = timestamped.getMeasurement();
+        int fields = 0;
+        for (MeasurementField field : MeasurementField.values()) {
+            if (measurement.get(field) != null) {
+                fields |= 1 << field.ordinal();
+            }
+        }
+        buffer.put((byte) fields);
+        for (MeasurementField field : MeasurementField.values()) {
+            Integer value = measurement.get(field);
+            if (value != null) {
+                VarInts.putVarInt(buffer, VarInts.zigZag(value));
+            }
+        }
+
+        VarInts.putVarLong(buffer, VarInts.zigZag(timestamped.getScalarTimestamp().getValue()));
+
+        VectorTimestamp vector = timestamped.getVectorTimestamp();
+        VarInts.putVarInt(buffer, vector.size());
+        for (int i = 0, n = vector.size(); i < n; i++) {
+            VarInts.putVarInt(buffer, vector.get(i));
+        }
+    }
+
+    @Override
+    public int encodedSize(TimestampedMeasurement timestamped) {
+        // Mirrors encodeMeasurement
+        int size = 1;
+        Measurement measurement = timestamped.getMeasurement();
+        for (MeasurementField field : MeasurementField.values()) {
+            Integer value = measurement.get(field);
+            if (value != null) {
+                size += VarInts.varIntSize(VarInts.zigZag(value));
+            }
+        }
+
+        size += VarInts.varLongSize(VarInts.zigZag(timestamped.getScalarTimestamp().getValue()));
+
+        VectorTimestamp vector = timestamped.getVectorTimestamp();
+        size += VarInts.varIntSize(vector.size());
+        for (int i = 0, n = vector.size(); i < n; i++) {
+            size += VarInts.varIntSize(vector.get(i));
+        }
+        return size;
+    }
+
+    @Override
+    public int maxHeaderSize() {
+        return MAX_HEADER_SIZE;
+    }
+
+    @Override
+    public MeasurementPacket decode(ByteBuffer buffer) {
+        try {
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported packet version: " + version);
+            }
+
+            int sender = VarInts.getVarInt(buffer);
+            long epoch = VarInts.getVarLong(buffer);
+            long sequence = VarInts.getVarLong(buffer);
+            int rounds = VarInts.getVarInt(buffer);
+
+            int count = VarInts.getVarInt(buffer);
+            if (count < 0 || count > buffer.remaining()) {
+                throw new IllegalArgumentException("Invalid number of measurements: " + count);
+            }
+            List<TimestampedMeasurement> measurements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                measurements.add(decodeMeasurement(buffer));
+            }
+
+            return new MeasurementPacket(sender, epoch, sequence, rounds, measurements);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated binary packet", e);
+        }
+    }
+
+    private static TimestampedMeasurement decodeMeasurement(ByteBuffer buffer) {
+        Measurement.MeasurementBuilder builder = Measurement.builder();
+        int fields = buffer.get();
+        for (MeasurementField field : MeasurementField.values()) {
+            if ((fields & (1 << field.ordinal())) != 0) {
+                builder.set(field, VarInts.unZigZag(VarInts.getVarInt(buffer)));
+            }
+        }
+
+        ScalarTimestamp scalar = new ScalarTimestamp(VarInts.unZigZag(VarInts.getVarLong(buffer)));
+
+        // Every component takes at least one byte, which bounds a bogus cardinality
+        int cardinality = VarInts.getVarInt(buffer);
+        if (cardinality < 0 || cardinality > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid vector timestamp cardinality: " + cardinality);
+        }
+        int[] values = new int[cardinality];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = VarInts.getVarInt(buffer);
+        }
+
+        return new TimestampedMeasurement(builder.build(), scalar, new VectorTimestamp(values));
+    }
+
+    @Override
+    public byte getVersion() {
+        return VERSION;
+    }
+}
@@ -0,0 +1,315 @@
+package hr.fer.ztel.rassus.dz2.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import hr.fer.ztel.rassus.dz2.model.Measurement;
+import hr.fer.ztel.rassus.dz2.model.MeasurementField;
+import hr.fer.ztel.rassus.dz2.model.MeasurementPacket;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+import hr.fer.ztel.rassus.dz2.timestamp.ScalarTimestamp;
+import hr.fer.ztel.rassus.dz2.timestamp.VectorTimestamp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Streaming Gson type adapters of the packet model. They write the same
+ * objects as the reflective adapters Gson would otherwise create, so nodes
+ * using either of them understand each other, but without reflection and
+ * without boxing the components of vector timestamps.
+ * <p>
+ * Unknown properties are skipped when reading, and a missing property
+ * fails with a {@link JsonParseException}, except for the remaining rounds
+ * of a packet, which are zero when missing.
+ */
+final class JsonAdapters {
+
+    static final TypeAdapter<Measurement> MEASUREMENT = new MeasurementAdapter();
+    static final TypeAdapter<ScalarTimestamp> SCALAR_TIMESTAMP = new ScalarTimestampAdapter();
+    static final TypeAdapter<VectorTimestamp> VECTOR_TIMESTAMP = new VectorTimestampAdapter();
+    static final TypeAdapter<TimestampedMeasurement> TIMESTAMPED_MEASUREMENT = new TimestampedMeasurementAdapter();
+    static final TypeAdapter<MeasurementPacket> MEASUREMENT_PACKET = new MeasurementPacketAdapter();
+
+    /** Gson with all adapters of the packet model, shared since it is thread-safe. */
+    static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Measurement.class, MEASUREMENT)
+            .registerTypeAdapter(ScalarTimestamp.class, SCALAR_TIMESTAMP)
+            .registerTypeAdapter(VectorTimestamp.class, VECTOR_TIMESTAMP)
+            .registerTypeAdapter(TimestampedMeasurement.class, TIMESTAMPED_MEASUREMENT)
+            .registerTypeAdapter(MeasurementPacket.class, MEASUREMENT_PACKET)
+            .create();
+
+    /** Property names of measurement fields, indexed by ordinal. */
+    private static final String[] FIELD_NAMES = new String[MeasurementField.values().length];
+
+    static {
+        for (MeasurementField field : MeasurementField.values()) {
+            FIELD_NAMES[field.ordinal()] = field.name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** Disable instantiation. */
+    private JsonAdapters() {}
+
+    /** Characters written around a measurement other than its values and field names. */
+    private static final int MEASUREMENT_OVERHEAD = ("{\"measurement\":{},\"scalarTimestamp\":{\"value\":}"
+            + ",\"vectorTimestamp\":{\"values\":[]}},").length();
+    /** Upper bound of the characters of a packet without measurements. */
+    static final int MAX_HEADER_SIZE = ("{\"sender\":,\"epoch\":,\"sequence\":,\"rounds\":,\"measurements\":[]}").length()
+            + 2 * decimalLength(Integer.MIN_VALUE) + 2 * decimalLength(Long.MIN_VALUE);
+
+    /**
+     * Returns the number of characters the measurement adds to the array of
+     * a packet written by {@link #MEASUREMENT_PACKET}, including the comma
+     * that separates it from the previous one. All characters are ASCII, so
+     * this is also the number of UTF-8 bytes.
+     *
+     * @param timestamped the measurement with its timestamps
+     * @return upper bound of the encoded size in bytes
+     */
+    static int encodedSize(TimestampedMeasurement timestamped) {
+        int size = MEASUREMENT_OVERHEAD;
+
+        Measurement measurement = timestamped.getMeasurement();
+        int fields = 0;
+        for (MeasurementField field : MeasurementField.values()) {
+            Integer value = measurement.get(field);
+            if (value != null) {
+                // "name": and the value
+                size += FIELD_NAMES[field.ordinal()].length() + 3 + decimalLength(value);
+                fields++;
+            }
+        }
+        size += Math.max(fields - 1, 0);
+
+        size += decimalLength(timestamped.getScalarTimestamp().getValue());
+
+        VectorTimestamp vector = timestamped.getVectorTimestamp();
+        for (int i = 0, n = vector.size(); i < n; i++) {
+            size += decimalLength(vector.get(i));
+        }
+        return size + Math.max(vector.size() - 1, 0);
+    }
+
+    private static int decimalLength(long value) {
+        int length = value < 0 ? 2 : 1;
+        while (value <= -10 || value >= 10) {
+            value /= 10;
+            length++;
+        }
+        return length;
+    }
+
+    private static void require(Object value, String name) {
+        if (value == null) {
+            throw new JsonParseException("Missing property: " + name);
+        }
+    }
+
+    private static class MeasurementAdapter extends TypeAdapter<Measurement> {
+        @Override
+        public void write(JsonWriter out, Measurement measurement) throws IOException {
+            out.beginObject();
+            for (MeasurementField field : MeasurementField.values()) {
+                Integer value = measurement.get(field);
+                if (value != null) {
+                    out.name(FIELD_NAMES[field.ordinal()]).value(value.longValue());
+                }
+            }
+            out.endObject();
+        }
+
+        @Override
+        public Measurement read(JsonReader in) throws IOException {
+            Measurement.MeasurementBuilder builder = Measurement.builder();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                MeasurementField field = fieldOf(name);
+                if (field == null || in.peek() == JsonToken.NULL) {
+                    in.skipValue();
+                } else {
+                    builder.set(field, in.nextInt());
+                }
+            }
+            in.endObject();
+            return builder.build();
+        }
+
+        private static MeasurementField fieldOf(String name) {
+            for (int i = 0; i < FIELD_NAMES.length; i++) {
+                if (FIELD_NAMES[i].equals(name)) {
+                    return MeasurementField.get(i);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class ScalarTimestampAdapter extends TypeAdapter<ScalarTimestamp> {
+        @Override
+        public void write(JsonWriter out, ScalarTimestamp timestamp) throws IOException {
+            out.beginObject().name("value").value(timestamp.getValue()).endObject();
+        }
+
+        @Override
+        public ScalarTimestamp read(JsonReader in) throws IOException {
+            Long value = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                if (in.nextName().equals("value")) {
+                    value = in.nextLong();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            require(value, "value");
+            return new ScalarTimestamp(value);
+        }
+    }
+
+    private static class VectorTimestampAdapter extends TypeAdapter<VectorTimestamp> {
+        @Override
+        public void write(JsonWriter out, VectorTimestamp timestamp) throws IOException {
+            out.beginObject().name("values").beginArray();
+            for (int i = 0, n = timestamp.size(); i < n; i++) {
+                out.value(timestamp.get(i));
+            }
+            out.endArray().endObject();
+        }
+
+        @Override
+        public VectorTimestamp read(JsonReader in) throws IOException {
+            int[] values = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                if (in.nextName().equals("values")) {
+                    values = readValues(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            require(values, "values");
+            return new VectorTimestamp(values);
+        }
+
+        private static int[] readValues(JsonReader in) throws IOException {
+            int[] values = new int[8];
+            int size = 0;
+            in.beginArray();
+            while (in.hasNext()) {
+                if (size == values.length) {
+                    // Every component takes at least two characters, which bounds a bogus array
+                    if (size >= PacketCodecs.MAX_PACKET_SIZE / 2) {
+                        throw new JsonParseException("Too many vector timestamp components");
+                    }
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                values[size++] = in.nextInt();
+            }
+            in.endArray();
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static class TimestampedMeasurementAdapter extends TypeAdapter<TimestampedMeasurement> {
+        @Override
+        public void write(JsonWriter out, TimestampedMeasurement measurement) throws IOException {
+            out.beginObject();
+            MEASUREMENT.write(out.name("measurement"), measurement.getMeasurement());
+            SCALAR_TIMESTAMP.write(out.name("scalarTimestamp"), measurement.getScalarTimestamp());
+            VECTOR_TIMESTAMP.write(out.name("vectorTimestamp"), measurement.getVectorTimestamp());
+            out.endObject();
+        }
+
+        @Override
+        public TimestampedMeasurement read(JsonReader in) throws IOException {
+            Measurement measurement = null;
+            ScalarTimestamp scalarTimestamp = null;
+            VectorTimestamp vectorTimestamp = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "measurement":     measurement = MEASUREMENT.read(in); break;
+                    case "scalarTimestamp": scalarTimestamp = SCALAR_TIMESTAMP.read(in); break;
+                    case "vectorTimestamp": vectorTimestamp = VECTOR_TIMESTAMP.read(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+
+            require(measurement, "measurement");
+            require(scalarTimestamp, "scalarTimestamp");
+            require(vectorTimestamp, "vectorTimestamp");
+            return new TimestampedMeasurement(measurement, scalarTimestamp, vectorTimestamp);
+        }
+    }
+
+    private static class MeasurementPacketAdapter extends TypeAdapter<MeasurementPacket> {
+        @Override
+        public void write(JsonWriter out, MeasurementPacket packet) throws IOException {
+            out.beginObject();
+            out.name("sender").value(packet.getSender());
+            out.name("epoch").value(packet.getEpoch());
+            out.name("sequence").value(packet.getSequence());
+            out.name("rounds").value(packet.getRounds());
+            out.name("measurements").beginArray();
+            for (TimestampedMeasurement measurement : packet.getMeasurements()) {
+                TIMESTAMPED_MEASUREMENT.write(out, measurement);
+            }
+            out.endArray();
+            out.endObject();
+        }
+
+        @Override
+        public MeasurementPacket read(JsonReader in) throws IOException {
+            Integer sender = null;
+            Long epoch = null;
+            Long sequence = null;
+            int rounds = 0;
+            List<TimestampedMeasurement> measurements = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "sender":       sender = in.nextInt(); break;
+                    case "epoch":        epoch = in.nextLong(); break;
+                    case "sequence":     sequence = in.nextLong(); break;
+                    case "rounds":       rounds = in.nextInt(); break;
+                    case "measurements": measurements = readMeasurements(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+
+            require(sender, "sender");
+            require(epoch, "epoch");
+            require(sequence, "sequence");
+            require(measurements, "measurements");
+            return new MeasurementPacket(sender, epoch, sequence, rounds, measurements);
+        }
+
+        private static List<TimestampedMeasurement> readMeasurements(JsonReader in) throws IOException {
+            List<TimestampedMeasurement> measurements = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                measurements.add(TIMESTAMPED_MEASUREMENT.read(in));
+            }
+            in.endArray();
+            return measurements;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package hr.fer.ztel.rassus.dz2.codec;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import hr.fer.ztel.rassus.dz2.model.MeasurementPacket;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Codec that writes packets as UTF-8 encoded JSON objects. This is the
+ * original wire format; its "version" is the opening brace of the object.
+ * <p>
+ * Packets are streamed through the adapters of {@link JsonAdapters}
+ * straight into and out of the buffer.
+ */
+public class JsonPacketCodec implements PacketCodec {
+
+    /** First byte of every JSON object. */
+    public static final byte VERSION = '{';
+
+    private final TypeAdapter<MeasurementPacket> adapter = JsonAdapters.GSON.getAdapter(MeasurementPacket.class);
+
+    @Override
+    public void encode(MeasurementPacket packet, ByteBuffer buffer) {
+        try (JsonWriter writer = new JsonWriter(new Utf8BufferWriter(buffer))) {
+            adapter.write(writer, packet);
+        } catch (IOException e) {
+            // The writer does no I/O of its own
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int encodedSize(TimestampedMeasurement measurement) {
+        return JsonAdapters.encodedSize(measurement);
+    }
+
+    @Override
+    public int maxHeaderSize() {
+        return JsonAdapters.MAX_HEADER_SIZE;
+    }
+
+    @Override
+    public MeasurementPacket decode(ByteBuffer buffer) {
+        try (JsonReader reader = new JsonReader(new Utf8BufferReader(buffer))) {
+            MeasurementPacket packet = adapter.read(reader);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IllegalArgumentException("Trailing data after JSON packet");
+            }
+            return packet;
+        } catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid JSON packet", e);
+        }
+    }
+
+    @Override
+    public byte getVersion() {
+        return VERSION;
+    }
+}
@@ -0,0 +1,59 @@
+package hr.fer.ztel.rassus.dz2.codec;
+
+import hr.fer.ztel.rassus.dz2.model.MeasurementPacket;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts measurement packets to and from their wire format. The first
+ * byte written by every codec identifies the format, so a receiver can
+ * decode packets from nodes that use a different codec, see
+ * {@link PacketCodecs#decode(ByteBuffer)}. Implementations are stateless
+ * and thread-safe.
+ */
+public interface PacketCodec {
+
+    /**
+     * Writes the packet into the buffer, starting at its current position.
+     *
+     * @param packet packet to be encoded
+     * @param buffer buffer into which the packet is written
+     * @throws java.nio.BufferOverflowException if the packet does not fit into the buffer
+     */
+    void encode(MeasurementPacket packet, ByteBuffer buffer);
+
+    /**
+     * Returns an upper bound of the number of bytes the measurement adds to
+     * an encoded packet, computed without encoding it. A packet takes at most
+     * {@link #maxHeaderSize()} bytes plus the sizes of its measurements.
+     *
+     * @param measurement measurement with its timestamps
+     * @return upper bound of the encoded size of the measurement, in bytes
+     */
+    int encodedSize(TimestampedMeasurement measurement);
+
+    /**
+     * Returns an upper bound of the encoded size of a packet without measurements.
+     *
+     * @return upper bound of the encoded size of the packet header, in bytes
+     */
+    int maxHeaderSize();
+
+    /**
+     * Reads a packet from the remaining bytes of the buffer.
+     *
+     * @param buffer buffer containing an encoded packet
+     * @return the decoded packet
+     * @throws IllegalArgumentException if the bytes are not a valid packet
+     */
+    MeasurementPacket decode(ByteBuffer buffer);
+
+    /**
+     * Returns the first byte of every packet encoded by this codec.
+     *
+     * @return the format identifier of this codec
+     */
+    byte getVersion();
+
+}
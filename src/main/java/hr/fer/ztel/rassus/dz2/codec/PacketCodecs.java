@@ -0,0 +1,74 @@
+package hr.fer.ztel.rassus.dz2.codec;
+
+import hr.fer.ztel.rassus.dz2.model.MeasurementPacket;
+import hr.fer.ztel.rassus.dz2.util.Settings;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Available packet codecs. Packets are always encoded with the configured
+ * codec, but every known format is accepted when decoding, so nodes with
+ * different codecs can run in the same cluster.
+ */
+public class PacketCodecs {
+
+    /** Largest payload of a UDP datagram. */
+    public static final int MAX_PACKET_SIZE = 65_507;
+
+    /**
+     * Wire formats that can be selected with {@link Settings#CODEC}.
+     */
+    public enum Format {
+        JSON(new JsonPacketCodec()),
+        BINARY(new BinaryPacketCodec());
+
+        private final PacketCodec codec;
+
+        Format(PacketCodec codec) {
+            this.codec = codec;
+        }
+
+        public PacketCodec getCodec() {
+            return codec;
+        }
+    }
+
+    /** Codec used for encoding packets. */
+    private static final PacketCodec DEFAULT_CODEC = Settings.getEnum(Settings.CODEC, Format.BINARY).getCodec();
+
+    /** Disable instantiation. */
+    private PacketCodecs() {}
+
+    /**
+     * Returns the codec used for encoding packets.
+     *
+     * @return the configured codec
+     */
+    public static PacketCodec getDefault() {
+        return DEFAULT_CODEC;
+    }
+
+    /**
+     * Decodes a packet written by any of the known codecs, choosing the codec
+     * by the first byte of the packet.
+     *
+     * @param buffer buffer containing an encoded packet
+     * @return the decoded packet
+     * @throws IllegalArgumentException if the packet format is unknown or invalid
+     */
+    public static MeasurementPacket decode(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Empty packet");
+        }
+
+        byte version = buffer.get(buffer.position());
+        for (Format format : Format.values()) {
+            if (format.codec.getVersion() == version) {
+                return format.codec.decode(buffer);
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown packet format: " + version);
+    }
+
+}
@@ -0,0 +1,56 @@
+package hr.fer.ztel.rassus.dz2.codec;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader that decodes UTF-8 directly from the remaining bytes of a byte
+ * buffer, without copying them into an intermediate string. Malformed
+ * input is reported as a {@link java.nio.charset.CharacterCodingException}
+ * rather than replaced.
+ */
+class Utf8BufferReader extends Reader {
+
+    /** Decoders are reused by the thread that reads packets. */
+    private static final ThreadLocal<CharsetDecoder> DECODER =
+            ThreadLocal.withInitial(StandardCharsets.UTF_8::newDecoder);
+
+    private final ByteBuffer buffer;
+    private final CharsetDecoder decoder = DECODER.get().reset();
+    private boolean flushed;
+
+    Utf8BufferReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        if (!flushed) {
+            CoderResult result = decoder.decode(buffer, out, true);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isUnderflow()) {
+                decoder.flush(out);
+                flushed = true;
+            }
+        }
+
+        int read = out.position() - off;
+        return read == 0 && flushed ? -1 : read;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,93 @@
+package hr.fer.ztel.rassus.dz2.codec;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * Writer that encodes characters as UTF-8 directly into a byte buffer,
+ * without building an intermediate string or byte array. Unpaired
+ * surrogates are written as <tt>'?'</tt>, like {@link String#getBytes}.
+ * <p>
+ * Writing past the limit of the buffer throws a
+ * {@link java.nio.BufferOverflowException}.
+ */
+class Utf8BufferWriter extends Writer {
+
+    private final ByteBuffer buffer;
+    /** High surrogate waiting for the rest of its pair, or 0. */
+    private char highSurrogate;
+
+    Utf8BufferWriter(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void write(int c) {
+        put((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            put(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            put(str.charAt(i));
+        }
+    }
+
+    private void put(char c) {
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                putCodePoint(Character.toCodePoint(high, c));
+                return;
+            }
+            buffer.put((byte) '?');
+        }
+
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer.put((byte) '?');
+        } else {
+            putCodePoint(c);
+        }
+    }
+
+    private void putCodePoint(int codePoint) {
+        if (codePoint < 0x800) {
+            buffer.put((byte) (0xC0 | codePoint >> 6));
+        } else if (codePoint < 0x10000) {
+            buffer.put((byte) (0xE0 | codePoint >> 12));
+            buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+        } else {
+            buffer.put((byte) (0xF0 | codePoint >> 18));
+            buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+            buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+        }
+        buffer.put((byte) (0x80 | codePoint & 0x3F));
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Writes a pending unpaired high surrogate, if any.
+     */
+    @Override
+    public void close() {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            buffer.put((byte) '?');
+        }
+    }
+}
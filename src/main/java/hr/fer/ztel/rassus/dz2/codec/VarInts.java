@@ -0,0 +1,132 @@
+package hr.fer.ztel.rassus.dz2.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-length encoding of integers, 7 bits per byte with the highest
+ * bit set on every byte except the last. Small values take fewer bytes;
+ * signed values should be zig-zag encoded first so that small negative
+ * values stay small as well.
+ */
+public class VarInts {
+
+    /** Disable instantiation. */
+    private VarInts() {}
+
+    /**
+     * Writes an unsigned variable-length int.
+     *
+     * @param buffer the buffer
+     * @param value value treated as unsigned
+     */
+    public static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned variable-length int.
+     *
+     * @param buffer the buffer
+     * @return the value
+     * @throws IllegalArgumentException if the value is longer than 5 bytes
+     */
+    public static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable-length int");
+    }
+
+    /**
+     * Writes an unsigned variable-length long.
+     *
+     * @param buffer the buffer
+     * @param value value treated as unsigned
+     */
+    public static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned variable-length long.
+     *
+     * @param buffer the buffer
+     * @return the value
+     * @throws IllegalArgumentException if the value is longer than 10 bytes
+     */
+    public static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable-length long");
+    }
+
+    /**
+     * Returns the number of bytes {@link #putVarInt(ByteBuffer, int)} writes for the value.
+     *
+     * @param value value treated as unsigned
+     * @return encoded size in bytes, from 1 to 5
+     */
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes {@link #putVarLong(ByteBuffer, long)} writes for the value.
+     *
+     * @param value value treated as unsigned
+     * @return encoded size in bytes, from 1 to 10
+     */
+    public static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /** Maps signed ints to unsigned so that small magnitudes stay small. */
+    public static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /** Inverse of {@link #zigZag(int)}. */
+    public static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** Maps signed longs to unsigned so that small magnitudes stay small. */
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /** Inverse of {@link #zigZag(long)}. */
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
@@ -0,0 +1,153 @@
+package hr.fer.ztel.rassus.dz2.ingest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Unbounded multi-producer, single-consumer buffer that is lock-free for
+ * producers. Items are spread over stripes by producer thread to avoid
+ * contention; each stripe is a chain of fixed-size chunks whose slots are
+ * claimed with a single atomic increment.
+ * <p>
+ * The consumer takes all items with {@link #drain()}, which atomically
+ * swaps every stripe for an empty chunk and then closes the old chunks, so
+ * an item is returned by exactly one drain: producers that claimed a slot
+ * before the chunk was closed are waited for, and producers that come after
+ * it retry on the new chunk. Items of a single producer are returned in the
+ * order they were added.
+ *
+ * @param <T> type of items
+ */
+public class StripedBuffer<T> {
+
+    private static final int DEFAULT_CHUNK_CAPACITY = 1024;
+    /** Added to the claim counter of a chunk when it is closed. */
+    private static final int CLOSED = 1 << 30;
+
+    private final Stripe<T>[] stripes;
+    private final int mask;
+    private final int chunkCapacity;
+
+    /**
+     * Creates a buffer with two stripes per available processor.
+     */
+    public StripedBuffer() {
+        this(2 * Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_CAPACITY);
+    }
+
+    /**
+     * Creates a buffer with the given number of stripes, rounded up to
+     * a power of two.
+     *
+     * @param stripeCount number of stripes
+     * @param chunkCapacity number of items in one chunk
+     */
+    @SuppressWarnings("unchecked")
+    public StripedBuffer(int stripeCount, int chunkCapacity) {
+        int n = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = (Stripe<T>[]) new Stripe<?>[n];
+        this.mask = n - 1;
+        this.chunkCapacity = chunkCapacity;
+
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new Stripe<>(new Chunk<>(chunkCapacity, null));
+        }
+    }
+
+    /**
+     * Adds the item to the buffer. Never blocks.
+     *
+     * @param item the item, not <tt>null</tt>
+     */
+    public void add(T item) {
+        if (item == null) {
+            throw new NullPointerException("Item must not be null.");
+        }
+
+        AtomicReference<Chunk<T>> current = stripes[stripeIndex()].current;
+        while (true) {
+            Chunk<T> chunk = current.get();
+            int index = chunk.claimed.getAndIncrement();
+            if (index < chunkCapacity) {
+                chunk.slots.lazySet(index, item);
+                return;
+            }
+
+            // Chunk is full or closed, install a new one unless someone already did
+            if (index < CLOSED && current.get() == chunk) {
+                current.compareAndSet(chunk, new Chunk<>(chunkCapacity, chunk));
+            }
+        }
+    }
+
+    /**
+     * Removes and returns all items added before this call. Must be called
+     * by a single consumer thread at a time.
+     *
+     * @return all items in the buffer
+     */
+    public List<T> drain() {
+        List<T> items = new ArrayList<>();
+        for (Stripe<T> stripe : stripes) {
+            Chunk<T> last = stripe.current.getAndSet(new Chunk<>(chunkCapacity, null));
+            drainChain(last, items);
+        }
+        return items;
+    }
+
+    /**
+     * Closes every chunk of the chain and collects its items, oldest first.
+     */
+    private void drainChain(Chunk<T> last, List<T> items) {
+        Deque<Chunk<T>> chain = new ArrayDeque<>();
+        for (Chunk<T> chunk = last; chunk != null; chunk = chunk.previous) {
+            chain.addFirst(chunk);
+        }
+
+        for (Chunk<T> chunk : chain) {
+            drainChunk(chunk, items);
+        }
+    }
+
+    private void drainChunk(Chunk<T> chunk, List<T> items) {
+        int count = Math.min(chunk.claimed.getAndAdd(CLOSED), chunkCapacity);
+        for (int i = 0; i < count; i++) {
+            T item;
+            // Slot was claimed before closing, its producer is about to publish it
+            while ((item = chunk.slots.get(i)) == null) {
+                Thread.yield();
+            }
+            items.add(item);
+        }
+    }
+
+    private int stripeIndex() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & mask;
+    }
+
+    private static class Stripe<T> {
+        private final AtomicReference<Chunk<T>> current;
+
+        private Stripe(Chunk<T> chunk) {
+            this.current = new AtomicReference<>(chunk);
+        }
+    }
+
+    private static class Chunk<T> {
+        private final AtomicReferenceArray<T> slots;
+        private final AtomicInteger claimed = new AtomicInteger();
+        /** Full chunk that was replaced by this one, drained before this one. */
+        private final Chunk<T> previous;
+
+        private Chunk(int capacity, Chunk<T> previous) {
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.previous = previous;
+        }
+    }
+}
@@ -1,14 +1,94 @@
 package hr.fer.ztel.rassus.dz2.loader;
 
+import hr.fer.ztel.rassus.dz2.util.Settings;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Registry of measurement loaders. A loader is created from a named source
+ * and a source-specific location, and one instance is shared for every
+ * source and location, so all nodes in one JVM share a single loaded
+ * dataset. Built-in sources are:
+ * <ul>
+ *     <li><tt>csv</tt> - CSV file parsed onto the heap, location is the file path</li>
+ *     <li><tt>mapped</tt> - memory-mapped CSV file, location is the file path</li>
+ *     <li><tt>synthetic</tt> - generated measurements, location is the number of rows</li>
+ * </ul>
+ * The default loader is selected with {@link Settings#LOADER_SOURCE} and
+ * {@link Settings#LOADER_LOCATION}.
+ */
 public class Loaders {
 
-    private static MeasurementLoader measurementLoader;
+    private static final String DEFAULT_SOURCE = "csv";
+    private static final String DEFAULT_FILE = "src/main/resources/measurements.csv";
+    private static final String DEFAULT_SYNTHETIC_ROWS = "100000";
+
+    private static final Map<String, Function<String, MeasurementLoader>> SOURCES = new ConcurrentHashMap<>();
+    private static final Map<String, MeasurementLoader> LOADERS = new ConcurrentHashMap<>();
+
+    static {
+        SOURCES.put("csv", MeasurementCSVLoader::new);
+        SOURCES.put("mapped", MappedMeasurementLoader::new);
+        SOURCES.put("synthetic", rows -> new SyntheticMeasurementLoader(Integer.parseInt(rows)));
+    }
+
+    /** Disable instantiation. */
+    private Loaders() {}
 
+    /**
+     * Returns the configured loader. It is created once, on first call, and
+     * safely published to all threads.
+     *
+     * @return the configured loader
+     */
     public static MeasurementLoader getMeasurementLoader() {
-        if (measurementLoader == null) {
-            measurementLoader = new MeasurementCSVLoader();
+        return DefaultHolder.LOADER;
+    }
+
+    /**
+     * Returns the shared loader of the given source and location, creating it
+     * on first call.
+     *
+     * @param source name of a registered source
+     * @param location source-specific location, such as a file path
+     * @return the shared loader
+     * @throws IllegalArgumentException if the source is not registered
+     */
+    public static MeasurementLoader getMeasurementLoader(String source, String location) {
+        Function<String, MeasurementLoader> factory = SOURCES.get(source.toLowerCase());
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown measurement source: " + source);
         }
 
-        return measurementLoader;
+        return LOADERS.computeIfAbsent(source.toLowerCase() + ":" + location, k -> factory.apply(location));
+    }
+
+    /**
+     * Registers a new source of measurements. Must be called before the
+     * source is first used.
+     *
+     * @param source name of the source
+     * @param factory creates a loader for the given location
+     * @throws IllegalArgumentException if the source is already registered
+     */
+    public static void register(String source, Function<String, MeasurementLoader> factory) {
+        if (SOURCES.putIfAbsent(source.toLowerCase(), factory) != null) {
+            throw new IllegalArgumentException("Measurement source already registered: " + source);
+        }
+    }
+
+    /**
+     * Lazily initialized holder of the configured loader.
+     */
+    private static class DefaultHolder {
+        private static final MeasurementLoader LOADER = createDefault();
+
+        private static MeasurementLoader createDefault() {
+            String source = Settings.getString(Settings.LOADER_SOURCE, DEFAULT_SOURCE);
+            String defaultLocation = source.equalsIgnoreCase("synthetic") ? DEFAULT_SYNTHETIC_ROWS : DEFAULT_FILE;
+            return getMeasurementLoader(source, Settings.getString(Settings.LOADER_LOCATION, defaultLocation));
+        }
     }
 }
@@ -0,0 +1,257 @@
+package hr.fer.ztel.rassus.dz2.loader;
+
+import hr.fer.ztel.rassus.dz2.model.Measurement;
+import hr.fer.ztel.rassus.dz2.model.MeasurementField;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class for loading measurements from a memory-mapped CSV file, meant for
+ * recorded traces too large to parse onto the heap. When the file is first
+ * accessed, it is mapped and an index of row offsets is built in a single
+ * pass. Fields are then parsed on demand straight from the mapped bytes,
+ * without creating strings, so both random and sequential access take
+ * constant time per row.
+ * <p>
+ * Files larger than 2 GiB are mapped in segments. Each segment overlaps
+ * the next one by the maximum line length, so every row can be read from
+ * the segment it starts in.
+ */
+public class MappedMeasurementLoader implements MeasurementLoader {
+
+    /** Name of the file from which all lines are read. */
+    private static final String DEFAULT_MEASUREMENTS_FILE = "src/main/resources/measurements.csv";
+    /** Size of a mapped segment, excluding overlap. */
+    private static final long SEGMENT_SIZE = 1L << 30;
+    /** Maximum length of a line, in bytes. */
+    private static final int MAX_LINE_LENGTH = 1 << 16;
+    /** Returned by field parsing when the field has no value. */
+    private static final long MISSING = Long.MIN_VALUE;
+
+    private final Path measurementsFile;
+    private volatile Index index;
+
+    public MappedMeasurementLoader() {
+        this(DEFAULT_MEASUREMENTS_FILE);
+    }
+
+    public MappedMeasurementLoader(String filePath) {
+        this.measurementsFile = Paths.get(filePath);
+    }
+
+    @Override
+    public Measurement getMeasurement(int index) {
+        return getIndex().readMeasurement(index);
+    }
+
+    @Override
+    public List<Measurement> getMeasurements() {
+        Index idx = getIndex();
+        return new AbstractList<Measurement>() {
+            @Override
+            public Measurement get(int index) {
+                return idx.readMeasurement(index);
+            }
+
+            @Override
+            public int size() {
+                return idx.rowCount;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return getIndex().rowCount;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the field has no value in the given row.
+     *
+     * @param row index of the row
+     * @param field the field
+     * @return <tt>true</tt> if the value is missing
+     */
+    public boolean isNull(int row, MeasurementField field) {
+        return getIndex().readField(row, field) == MISSING;
+    }
+
+    /**
+     * Returns the value of the field in the given row, or 0 if it is missing.
+     *
+     * @param row index of the row
+     * @param field the field
+     * @return the value of the field
+     */
+    public int getInt(int row, MeasurementField field) {
+        long value = getIndex().readField(row, field);
+        return value == MISSING ? 0 : (int) value;
+    }
+
+    private Index getIndex() {
+        Index idx = index;
+        if (idx == null) {
+            synchronized (this) {
+                idx = index;
+                if (idx == null) {
+                    index = idx = open();
+                }
+            }
+        }
+        return idx;
+    }
+
+    private Index open() {
+        try (FileChannel channel = FileChannel.open(measurementsFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int segmentCount = (int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long start = i * SEGMENT_SIZE;
+                long length = Math.min(SEGMENT_SIZE + MAX_LINE_LENGTH, size - start);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(0, length));
+            }
+            return new Index(segments, size);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to map measurements file.", e);
+        }
+    }
+
+    /**
+     * Mapped segments with the offsets of all rows.
+     */
+    private static class Index {
+        private final MappedByteBuffer[] segments;
+        /** Column of each field, -1 if the file has no such column. */
+        private final int[] fieldColumns = new int[MeasurementField.count()];
+        private long[] rowOffsets = new long[1024];
+        private int rowCount;
+
+        private Index(MappedByteBuffer[] segments, long size) {
+            this.segments = segments;
+            Arrays.fill(fieldColumns, -1);
+
+            // Find the start of every non-empty line; the first one is the header
+            long headerEnd = -1;
+            long lineStart = 0;
+            for (long pos = 0; pos <= size; pos++) {
+                if (pos < size && byteAt(pos) != '\n') {
+                    continue;
+                }
+
+                long lineEnd = pos > lineStart && byteAt(pos - 1) == '\r' ? pos - 1 : pos;
+                if (headerEnd < 0) {
+                    headerEnd = lineEnd;
+                    parseHeader(lineEnd);
+                } else if (lineEnd > lineStart) {
+                    addRow(lineStart);
+                }
+                lineStart = pos + 1;
+            }
+            rowOffsets = Arrays.copyOf(rowOffsets, rowCount);
+        }
+
+        private byte byteAt(long pos) {
+            return segments[(int) (pos / SEGMENT_SIZE)].get((int) (pos % SEGMENT_SIZE));
+        }
+
+        private void parseHeader(long end) {
+            byte[] bytes = new byte[(int) end];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = byteAt(i);
+            }
+
+            String[] columns = new String(bytes, StandardCharsets.UTF_8).split(",", -1);
+            for (int column = 0; column < columns.length; column++) {
+                MeasurementField field = MeasurementField.forColumn(columns[column]);
+                if (field != null) {
+                    fieldColumns[field.ordinal()] = column;
+                }
+            }
+        }
+
+        private void addRow(long offset) {
+            if (rowCount == rowOffsets.length) {
+                rowOffsets = Arrays.copyOf(rowOffsets, 2 * rowCount);
+            }
+            rowOffsets[rowCount++] = offset;
+        }
+
+        private Measurement readMeasurement(int row) {
+            Measurement.MeasurementBuilder builder = Measurement.builder();
+            for (MeasurementField field : MeasurementField.values()) {
+                long value = readField(row, field);
+                if (value != MISSING) {
+                    builder.set(field, (int) value);
+                }
+            }
+            return builder.build();
+        }
+
+        /**
+         * Parses the field of the given row from the mapped bytes.
+         */
+        private long readField(int row, MeasurementField field) {
+            if (row < 0 || row >= rowCount) {
+                throw new IndexOutOfBoundsException("Row " + row + ", size " + rowCount);
+            }
+
+            int column = fieldColumns[field.ordinal()];
+            if (column < 0) {
+                return MISSING;
+            }
+
+            long offset = rowOffsets[row];
+            MappedByteBuffer segment = segments[(int) (offset / SEGMENT_SIZE)];
+            int pos = (int) (offset % SEGMENT_SIZE);
+            int limit = segment.limit();
+
+            // Skip to the start of the column
+            for (int c = 0; c < column; pos++) {
+                if (pos >= limit || isLineEnd(segment.get(pos))) {
+                    return MISSING;
+                }
+                if (segment.get(pos) == ',') {
+                    c++;
+                }
+            }
+
+            boolean negative = pos < limit && segment.get(pos) == '-';
+            if (negative) {
+                pos++;
+            }
+
+            long value = 0;
+            int digits = 0;
+            for (; pos < limit; pos++) {
+                byte b = segment.get(pos);
+                if (b == ',' || isLineEnd(b)) {
+                    break;
+                }
+                if (b < '0' || b > '9') {
+                    throw new NumberFormatException("Invalid number in row " + row + ", column " + column);
+                }
+                value = 10 * value + (b - '0');
+                digits++;
+            }
+
+            if (digits == 0) {
+                return MISSING;
+            }
+            return negative ? -value : value;
+        }
+
+        private static boolean isLineEnd(byte b) {
+            return b == '\n' || b == '\r';
+        }
+    }
+}
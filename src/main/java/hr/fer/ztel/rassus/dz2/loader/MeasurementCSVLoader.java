@@ -1,24 +1,29 @@
 package hr.fer.ztel.rassus.dz2.loader;
 
 import hr.fer.ztel.rassus.dz2.model.Measurement;
+import hr.fer.ztel.rassus.dz2.model.MeasurementField;
+import hr.fer.ztel.rassus.dz2.model.MeasurementStore;
 
+import java.io.BufferedReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.AbstractList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
- * Class for loading measurements from a CSV file on disk.
+ * Class for loading measurements from a CSV file on disk. Measurements are
+ * parsed into a columnar {@link MeasurementStore}; columns are matched to
+ * fields by the names in the header line.
  */
 public class MeasurementCSVLoader implements MeasurementLoader {
 
     /** Name of the file from which all lines are read. */
     private static final String DEFAULT_MEASUREMENTS_FILE = "src/main/resources/measurements.csv";
 
-    /** List of measurements cached after the first load. */
-    private List<Measurement> cachedMeasurements;
+    /** Store of measurements cached after the first load. */
+    private volatile MeasurementStore cachedStore;
 
     private Path measurementsFile;
 
@@ -32,27 +37,120 @@ public class MeasurementCSVLoader implements MeasurementLoader {
 
     @Override
     public Measurement getMeasurement(int index) {
-        return getMeasurements().get(index);
+        return getStore().getMeasurement(index);
     }
 
     @Override
     public List<Measurement> getMeasurements() {
-        if (cachedMeasurements == null) {
-            cachedMeasurements = loadMeasurements();
+        MeasurementStore store = getStore();
+        return new AbstractList<Measurement>() {
+            @Override
+            public Measurement get(int index) {
+                return store.getMeasurement(index);
+            }
+
+            @Override
+            public int size() {
+                return store.size();
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return getStore().size();
+    }
+
+    /**
+     * Returns the columnar store of all measurements. The file is parsed only
+     * once, even if the first calls are concurrent.
+     *
+     * @return the store of all measurements
+     */
+    public MeasurementStore getStore() {
+        MeasurementStore store = cachedStore;
+        if (store == null) {
+            synchronized (this) {
+                store = cachedStore;
+                if (store == null) {
+                    cachedStore = store = loadMeasurements();
+                }
+            }
         }
 
-        return cachedMeasurements;
+        return store;
     }
 
-    private List<Measurement> loadMeasurements() {
-        try {
-            return Files.lines(measurementsFile, StandardCharsets.UTF_8)
-                    .skip(1) // skip header
-                    .filter(s -> !s.isEmpty()) // filter out empty lines
-                    .map(Measurement::parseFromCSV) // convert string to Measurement
-                    .collect(Collectors.toList());
+    private MeasurementStore loadMeasurements() {
+        try (BufferedReader reader = Files.newBufferedReader(measurementsFile, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                return MeasurementStore.builder().build();
+            }
+            MeasurementField[] fields = parseHeader(header);
+
+            MeasurementStore.Builder builder = MeasurementStore.builder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) { // filter out empty lines
+                    parseLine(line, fields, builder);
+                }
+            }
+            return builder.build();
         } catch (Exception e) {
             throw new RuntimeException("Unable to load measurements from file.", e);
         }
     }
+
+    /**
+     * Returns the field of each column, <tt>null</tt> for unknown columns.
+     */
+    private static MeasurementField[] parseHeader(String header) {
+        String[] columns = header.split(",", -1);
+        MeasurementField[] fields = new MeasurementField[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            fields[i] = MeasurementField.forColumn(columns[i]);
+        }
+        return fields;
+    }
+
+    /**
+     * Parses the comma separated integers of the line straight into the
+     * builder, without splitting the line into strings.
+     */
+    private static void parseLine(String line, MeasurementField[] fields, MeasurementStore.Builder builder) {
+        builder.addRow();
+
+        int column = 0;
+        int start = 0;
+        for (int i = 0, n = line.length(); i <= n; i++) {
+            if (i < n && line.charAt(i) != ',') {
+                continue;
+            }
+
+            if (i > start && column < fields.length && fields[column] != null) {
+                builder.set(fields[column], parseInt(line, start, i));
+            }
+            column++;
+            start = i + 1;
+        }
+    }
+
+    private static int parseInt(String s, int start, int end) {
+        boolean negative = s.charAt(start) == '-';
+        int i = negative || s.charAt(start) == '+' ? start + 1 : start;
+        if (i == end) {
+            throw new NumberFormatException("Invalid number: " + s.substring(start, end));
+        }
+
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number: " + s.substring(start, end));
+            }
+            value = 10 * value + digit;
+        }
+        return negative ? -value : value;
+    }
 }
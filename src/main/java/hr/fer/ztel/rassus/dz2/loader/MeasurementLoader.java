@@ -10,4 +10,11 @@ public interface MeasurementLoader {
 
     List<Measurement> getMeasurements();
 
+    /**
+     * Returns the number of available measurements.
+     *
+     * @return the number of measurements
+     */
+    int size();
+
 }
@@ -0,0 +1,84 @@
+package hr.fer.ztel.rassus.dz2.loader;
+
+import hr.fer.ztel.rassus.dz2.model.Measurement;
+import hr.fer.ztel.rassus.dz2.model.MeasurementField;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Generator of synthetic measurements for load tests. Every measurement is
+ * computed from its index and the seed, so nothing is stored and every node
+ * with the same seed replays the same data.
+ */
+public class SyntheticMeasurementLoader implements MeasurementLoader {
+
+    /** Default seed, shared by all nodes. */
+    public static final long DEFAULT_SEED = 0x5EED_CAFEL;
+
+    /** Lowest value of each field. */
+    private static final int[] MIN_VALUES = {15, 980, 20, 0, 0, 0};
+    /** Number of distinct values of each field. */
+    private static final int[] RANGES = {20, 50, 60, 600, 800, 20};
+    /** Percentage of rows in which each field is missing. */
+    private static final int[] MISSING_PERCENT = {0, 0, 0, 5, 20, 60};
+
+    private final int size;
+    private final long seed;
+
+    public SyntheticMeasurementLoader(int size) {
+        this(size, DEFAULT_SEED);
+    }
+
+    public SyntheticMeasurementLoader(int size, long seed) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive: " + size);
+        }
+        this.size = size;
+        this.seed = seed;
+    }
+
+    @Override
+    public Measurement getMeasurement(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+
+        Measurement.MeasurementBuilder builder = Measurement.builder();
+        for (MeasurementField field : MeasurementField.values()) {
+            long hash = mix(seed ^ ((long) index << 8 | field.ordinal()));
+            int i = field.ordinal();
+            if (Math.floorMod(hash >>> 32, 100) >= MISSING_PERCENT[i]) {
+                builder.set(field, MIN_VALUES[i] + (int) Math.floorMod(hash, (long) RANGES[i]));
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public List<Measurement> getMeasurements() {
+        return new AbstractList<Measurement>() {
+            @Override
+            public Measurement get(int index) {
+                return getMeasurement(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** SplitMix64 finalizer. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
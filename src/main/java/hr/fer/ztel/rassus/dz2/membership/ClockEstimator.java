@@ -0,0 +1,161 @@
+package hr.fer.ztel.rassus.dz2.membership;
+
+import hr.fer.ztel.rassus.dz2.transport.Heartbeat;
+import lombok.Value;
+
+/**
+ * Estimate of the offset of the clock of a peer, from the timestamps of
+ * the heartbeats exchanged with it as in NTP symmetric mode. A heartbeat
+ * that echoes one of ours gives a sample of the offset and the round-trip
+ * delay:
+ * <pre>
+ * offset = ((t2 - t1) + (t3 - t4)) / 2
+ * delay  = (t4 - t1) - (t3 - t2)
+ * </pre>
+ * where <tt>t1</tt> and <tt>t4</tt> are the times our heartbeat was sent
+ * and the reply received, on our clock, and <tt>t2</tt> and <tt>t3</tt>
+ * the times the peer received ours and sent the reply, on its clock.
+ * <p>
+ * The error of a sample is at most half of its delay, so like the NTP
+ * clock filter the estimate is the sample with the lowest delay among the
+ * last ones, carried forward to the present with the drift of the offset,
+ * fitted by least squares to the same samples. All times are of the
+ * uncorrected clocks, so corrections do not disturb the samples.
+ * <p>
+ * Guarded by the lock of the estimator.
+ */
+class ClockEstimator {
+
+    /** Number of samples the estimate is chosen from. */
+    private static final int SAMPLES = 8;
+    /** Smallest number of samples that the drift is fitted to. */
+    private static final int MIN_DRIFT_SAMPLES = 4;
+
+    private final long[] sampleTimes = new long[SAMPLES];
+    private final long[] offsets = new long[SAMPLES];
+    private final long[] delays = new long[SAMPLES];
+    private int count;
+    private int next;
+    /** Local time of the last sample, in milliseconds. */
+    private long sampledAt;
+
+    /** Transmit time of the last heartbeat of the peer, echoed in ours. */
+    private long echoedTransmit;
+    /** Time the last heartbeat of the peer was received, echoed in ours. */
+    private long echoedReceive;
+    /** Origin time of the last sample, so that a repeated echo is not sampled twice. */
+    private long sampledOrigin;
+    /** Correction of the clock of the peer in its last heartbeat. */
+    private long peerCorrection;
+
+    /**
+     * Creates the heartbeat to send to the peer, echoing its last heartbeat.
+     *
+     * @param index index of this node
+     * @param now uncorrected time of this node
+     * @param correction correction of the clock of this node
+     * @return the heartbeat
+     */
+    synchronized Heartbeat heartbeat(int index, long now, long correction) {
+        return new Heartbeat(index, now, echoedTransmit, echoedReceive, correction);
+    }
+
+    /**
+     * Records a heartbeat received from the peer, and the sample it gives
+     * if it echoes a heartbeat of this node.
+     *
+     * @param heartbeat the heartbeat
+     * @param now uncorrected time of this node
+     */
+    synchronized void received(Heartbeat heartbeat, long now) {
+        long origin = heartbeat.getOriginTime();
+        if (origin != 0 && origin != sampledOrigin) {
+            long delay = (now - origin) - (heartbeat.getTransmitTime() - heartbeat.getReceiveTime());
+            // Drift of either clock while the peer held our heartbeat can make the delay negative
+            if (delay >= 0) {
+                long offset = ((heartbeat.getReceiveTime() - origin) + (heartbeat.getTransmitTime() - now)) / 2;
+                addSample(now, offset, delay);
+                sampledOrigin = origin;
+            }
+        }
+        echoedTransmit = heartbeat.getTransmitTime();
+        echoedReceive = now;
+        peerCorrection = heartbeat.getCorrection();
+    }
+
+    private void addSample(long time, long offset, long delay) {
+        sampleTimes[next] = time;
+        offsets[next] = offset;
+        delays[next] = delay;
+        next = (next + 1) % SAMPLES;
+        count = Math.min(count + 1, SAMPLES);
+        sampledAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the estimated offset of the corrected clock of the peer from
+     * the uncorrected clock of this node.
+     *
+     * @param now uncorrected time of this node
+     * @param maxAgeMillis longest local time since the last sample
+     * @return the estimate, or <tt>null</tt> if there is no recent sample
+     */
+    synchronized Estimate estimate(long now, long maxAgeMillis) {
+        if (count == 0 || System.currentTimeMillis() - sampledAt > maxAgeMillis) {
+            return null;
+        }
+
+        int best = 0;
+        for (int i = 1; i < count; i++) {
+            if (delays[i] < delays[best]) {
+                best = i;
+            }
+        }
+        double drift = drift();
+        long offset = offsets[best] + Math.round(drift * (now - sampleTimes[best]));
+        return new Estimate(offset + peerCorrection, delays[best], drift);
+    }
+
+    /**
+     * Fits the change of the offset per millisecond to the samples by
+     * least squares, relative to the first sample to keep precision.
+     */
+    private double drift() {
+        if (count < MIN_DRIFT_SAMPLES) {
+            return 0;
+        }
+
+        long baseTime = sampleTimes[0];
+        long baseOffset = offsets[0];
+        double meanTime = 0;
+        double meanOffset = 0;
+        for (int i = 0; i < count; i++) {
+            meanTime += sampleTimes[i] - baseTime;
+            meanOffset += offsets[i] - baseOffset;
+        }
+        meanTime /= count;
+        meanOffset /= count;
+
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < count; i++) {
+            double time = sampleTimes[i] - baseTime - meanTime;
+            covariance += time * (offsets[i] - baseOffset - meanOffset);
+            variance += time * time;
+        }
+        return variance == 0 ? 0 : covariance / variance;
+    }
+
+    /**
+     * Offset of the clock of a peer.
+     */
+    @Value
+    static class Estimate {
+        /** Offset of the corrected clock of the peer, in milliseconds. */
+        private final long offset;
+        /** Round-trip delay of the sample, twice the largest error of the offset. */
+        private final long delay;
+        /** Change of the offset per millisecond. */
+        private final double drift;
+    }
+}
@@ -0,0 +1,78 @@
+package hr.fer.ztel.rassus.dz2.membership;
+
+import hr.fer.ztel.rassus.dz2.stupidudp.network.DecoratedEmulatedSystemClock;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Synchronizes the clock of a node with the clocks of its peers, once per
+ * heartbeat interval. The offset of every available peer is estimated by
+ * its {@link ClockEstimator}, and like in the Berkeley algorithm the clock
+ * is corrected to the average of all clocks, including its own. Since all
+ * nodes do the same, their clocks converge to a common time instead of
+ * running ahead to the fastest one.
+ * <p>
+ * Corrections are applied by the thread that sends heartbeats; the skew
+ * bound may be read by any thread.
+ */
+@Log4j2
+public class ClockSynchronizer {
+
+    /** Number of heartbeat intervals after which the samples of a peer are stale. */
+    private static final int STALE_INTERVALS = 4;
+
+    private final Membership membership;
+    private final DecoratedEmulatedSystemClock clock;
+
+    /**
+     * Largest skew from the clock of any available peer measured at the last
+     * synchronization, before the correction, plus the error of its
+     * measurement, in milliseconds; <tt>-1</tt> before the first
+     * synchronization or if no available peer could be sampled.
+     */
+    @Getter private volatile long skewBoundMillis = -1;
+
+    public ClockSynchronizer(Membership membership, DecoratedEmulatedSystemClock clock) {
+        this.membership = membership;
+        this.clock = clock;
+    }
+
+    /**
+     * Corrects the clock towards the average of the clocks of all available
+     * peers that were recently sampled.
+     */
+    public void synchronize() {
+        long now = clock.rawTimeMillis();
+        long correction = clock.getOffset();
+        long maxAgeMillis = STALE_INTERVALS * membership.getHeartbeatIntervalMillis();
+
+        long sum = 0;
+        int count = 0;
+        int available = 0;
+        long bound = 0;
+        for (Member member : membership.getMembers()) {
+            if (member.isSuspected()) {
+                continue;
+            }
+            available++;
+            ClockEstimator.Estimate estimate = member.getClockEstimator().estimate(now, maxAgeMillis);
+            if (estimate == null) {
+                continue;
+            }
+            long skew = estimate.getOffset() - correction;
+            sum += skew;
+            count++;
+            bound = Math.max(bound, Math.abs(skew) + (estimate.getDelay() + 1) / 2);
+            log.trace("Clock of node {} is off by {} ms, delay {} ms, drift {}",
+                    member.getIndex(), skew, estimate.getDelay(), estimate.getDrift());
+        }
+        if (count == 0) {
+            skewBoundMillis = available == 0 ? 0 : -1;
+            return;
+        }
+        skewBoundMillis = bound;
+
+        // Average of the skews of all clocks, this one with no skew
+        clock.adjust(Math.round((double) sum / (count + 1)));
+    }
+}
@@ -0,0 +1,32 @@
+package hr.fer.ztel.rassus.dz2.membership;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.net.SocketAddress;
+
+/**
+ * Peer node known to a {@link Membership}, identified by the address on
+ * which it receives measurements.
+ */
+@Getter
+@ToString(exclude = {"detector", "clockEstimator"})
+public class Member {
+
+    /** Address on which the node receives measurements and heartbeats. */
+    private final SocketAddress address;
+    /** Index of the node, <tt>-1</tt> until the topology or a heartbeat names it. */
+    @Setter(AccessLevel.PACKAGE) private volatile int index;
+    /** Whether the failure detector suspects that the node has failed. */
+    @Setter(AccessLevel.PACKAGE) private volatile boolean suspected;
+    @Getter(AccessLevel.PACKAGE) private final PhiAccrualFailureDetector detector;
+    @Getter(AccessLevel.PACKAGE) private final ClockEstimator clockEstimator = new ClockEstimator();
+
+    Member(SocketAddress address, int index, PhiAccrualFailureDetector detector) {
+        this.address = address;
+        this.index = index;
+        this.detector = detector;
+    }
+}
@@ -0,0 +1,295 @@
+package hr.fer.ztel.rassus.dz2.membership;
+
+import hr.fer.ztel.rassus.dz2.stupidudp.network.DecoratedEmulatedSystemClock;
+import hr.fer.ztel.rassus.dz2.transport.Heartbeat;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Peers of a node and whether they are believed to be alive. Every node
+ * sends a {@link Heartbeat} to all its peers once per heartbeat interval,
+ * and each peer has a {@link PhiAccrualFailureDetector} of the heartbeats
+ * it sends. A peer whose phi reaches the threshold is suspected to have
+ * failed and measurements are not sent to it, until its next heartbeat
+ * arrives.
+ * <p>
+ * Peers join when the topology is updated with them, or when a heartbeat
+ * arrives from an address that is not a member, so a new node only has
+ * to know the existing ones. Peers leave when the topology is updated
+ * without them, and their heartbeats are then ignored until the topology
+ * names them again.
+ * <p>
+ * Heartbeats also carry the timestamps that the {@link ClockSynchronizer}
+ * estimates the clocks of the peers from.
+ * <p>
+ * Reads take no lock and return immutable snapshots, which are replaced
+ * whenever a peer joins, leaves, is suspected or recovers.
+ */
+@Log4j2
+public class Membership {
+
+    /** Largest number of nodes, bounds the vector clocks a bogus heartbeat can grow. */
+    private static final int MAX_NODES = 1 << 16;
+    /** Number of heartbeats in a row that may be lost before a peer is suspected. */
+    private static final int ACCEPTABLE_LOST_HEARTBEATS = 3;
+
+    /** Index of this node. */
+    @Getter private final int nodeIndex;
+    /** Interval between two heartbeats, in milliseconds; 0 if failures are not detected. */
+    @Getter private final long heartbeatIntervalMillis;
+    /** Phi at which a peer is suspected to have failed. */
+    @Getter private final double phiThreshold;
+
+    private final Map<SocketAddress, Member> members = new ConcurrentHashMap<>();
+    /** Addresses that left the topology, guarded by the lock of this membership. */
+    private final Set<SocketAddress> departed = new HashSet<>();
+    /** Clock whose times heartbeats carry. */
+    private final DecoratedEmulatedSystemClock clock;
+
+    private volatile List<Member> memberList;
+    private volatile List<Member> availablePeers;
+    /** Incremented whenever a peer joins or leaves. */
+    @Getter private volatile int version;
+    /**
+     * Number of vector clock components of the nodes known to this
+     * membership, the highest index of this node and of any peer that was
+     * ever a member plus one. Never shrinks, like vector clocks.
+     */
+    @Getter private volatile int clockSize;
+
+    /**
+     * Creates a membership of the given peers, all assumed to be alive.
+     *
+     * @param nodeIndex index of this node
+     * @param peers addresses of all peers
+     * @param clock clock whose times heartbeats carry
+     * @param heartbeatIntervalMillis interval between two heartbeats, 0 to not detect failures
+     * @param phiThreshold phi at which a peer is suspected to have failed
+     */
+    public Membership(int nodeIndex, List<SocketAddress> peers, DecoratedEmulatedSystemClock clock,
+                      long heartbeatIntervalMillis, double phiThreshold) {
+        this.nodeIndex = nodeIndex;
+        this.clock = clock;
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+        this.phiThreshold = phiThreshold;
+        // Peers are indexed from zero until the topology or their heartbeats name them
+        this.clockSize = Math.max(nodeIndex, peers.size()) + 1;
+
+        long now = System.currentTimeMillis();
+        for (SocketAddress address : peers) {
+            members.put(address, newMember(address, -1, now));
+        }
+        publish();
+    }
+
+    /**
+     * Returns <tt>true</tt> if heartbeats are sent and failures detected.
+     *
+     * @return <tt>true</tt> if failures are detected
+     */
+    public boolean isDetectingFailures() {
+        return heartbeatIntervalMillis > 0;
+    }
+
+    /**
+     * Returns the encoded heartbeat of this node to the given peer, sent now.
+     *
+     * @param member the peer
+     * @return the heartbeat
+     */
+    public byte[] heartbeatTo(Member member) {
+        return member.getClockEstimator().heartbeat(nodeIndex, clock.rawTimeMillis(), clock.getOffset()).encode();
+    }
+
+    /**
+     * Returns all peers, including suspected ones.
+     *
+     * @return immutable snapshot of all peers
+     */
+    public List<Member> getMembers() {
+        return memberList;
+    }
+
+    /**
+     * Returns all peers that are not suspected.
+     *
+     * @return immutable snapshot of the available peers
+     */
+    public List<Member> getAvailablePeers() {
+        return availablePeers;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the address belongs to a peer, suspected or not.
+     *
+     * @param address address of a peer
+     * @return <tt>true</tt> if the peer is a member
+     */
+    public boolean isMember(SocketAddress address) {
+        return members.containsKey(address);
+    }
+
+    /**
+     * Returns <tt>true</tt> if the address belongs to a peer that is not suspected.
+     *
+     * @param address address of a peer
+     * @return <tt>true</tt> if the peer is available
+     */
+    public boolean isAvailable(SocketAddress address) {
+        Member member = members.get(address);
+        return member != null && !member.isSuspected();
+    }
+
+    /**
+     * Gives every peer a full timeout to send its first heartbeat, called
+     * when the node starts sending heartbeats.
+     */
+    public synchronized void restart() {
+        long now = System.currentTimeMillis();
+        for (Member member : members.values()) {
+            member.getDetector().restart(now);
+        }
+    }
+
+    /**
+     * Records a heartbeat received from the given address. A suspected peer
+     * becomes available again, and an unknown address joins.
+     *
+     * @param address address the heartbeat came from
+     * @param heartbeat the heartbeat
+     */
+    public synchronized void heartbeatReceived(SocketAddress address, Heartbeat heartbeat) {
+        if (heartbeat.getIndex() < 0 || heartbeat.getIndex() >= MAX_NODES) {
+            log.warn("Ignoring heartbeat with invalid index {} from {}", heartbeat.getIndex(), address);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long clockTime = clock.rawTimeMillis();
+        Member member = members.get(address);
+        if (member == null) {
+            if (departed.contains(address) || heartbeat.getIndex() == nodeIndex) {
+                return;
+            }
+            member = newMember(address, heartbeat.getIndex(), now);
+            member.getClockEstimator().received(heartbeat, clockTime);
+            members.put(address, member);
+            log.info("Node {} at {} joined", heartbeat.getIndex(), address);
+            version++;
+            publish();
+            return;
+        }
+
+        setIndex(member, heartbeat.getIndex());
+        member.getDetector().heartbeat(now);
+        member.getClockEstimator().received(heartbeat, clockTime);
+        if (member.isSuspected()) {
+            member.setSuspected(false);
+            log.info("Node {} at {} is available again", member.getIndex(), address);
+            publish();
+        }
+    }
+
+    /**
+     * Suspects every available peer whose phi has reached the threshold.
+     */
+    public synchronized void detectFailures() {
+        if (!isDetectingFailures()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        boolean changed = false;
+        for (Member member : members.values()) {
+            if (member.isSuspected()) {
+                continue;
+            }
+            double phi = member.getDetector().phi(now);
+            if (phi >= phiThreshold) {
+                member.setSuspected(true);
+                log.warn("Node {} at {} is suspected to have failed, phi {}",
+                        member.getIndex(), member.getAddress(), String.format("%.1f", phi));
+                changed = true;
+            }
+        }
+        if (changed) {
+            publish();
+        }
+    }
+
+    /**
+     * Replaces the peers with the given ones. New peers join as available,
+     * and peers that are not given leave.
+     *
+     * @param peers index of every peer, by its address
+     */
+    public synchronized void updateTopology(Map<SocketAddress, Integer> peers) {
+        long now = System.currentTimeMillis();
+        boolean changed = false;
+
+        for (Map.Entry<SocketAddress, Integer> peer : peers.entrySet()) {
+            departed.remove(peer.getKey());
+            Member member = members.get(peer.getKey());
+            if (member != null) {
+                setIndex(member, peer.getValue());
+                continue;
+            }
+            members.put(peer.getKey(), newMember(peer.getKey(), peer.getValue(), now));
+            log.info("Node {} at {} joined", peer.getValue(), peer.getKey());
+            changed = true;
+        }
+
+        for (Iterator<Member> it = members.values().iterator(); it.hasNext(); ) {
+            Member member = it.next();
+            if (!peers.containsKey(member.getAddress())) {
+                it.remove();
+                departed.add(member.getAddress());
+                log.info("Node {} at {} left", member.getIndex(), member.getAddress());
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            version++;
+            publish();
+        }
+    }
+
+    private void setIndex(Member member, int index) {
+        member.setIndex(index);
+        growClock(index);
+    }
+
+    private void growClock(int index) {
+        if (index >= clockSize) {
+            clockSize = index + 1;
+        }
+    }
+
+    private Member newMember(SocketAddress address, int index, long now) {
+        growClock(index);
+        return new Member(address, index, new PhiAccrualFailureDetector(
+                heartbeatIntervalMillis, ACCEPTABLE_LOST_HEARTBEATS * heartbeatIntervalMillis, now));
+    }
+
+    private void publish() {
+        List<Member> all = new ArrayList<>(members.values());
+        List<Member> available = new ArrayList<>(all.size());
+        for (Member member : all) {
+            if (!member.isSuspected()) {
+                available.add(member);
+            }
+        }
+        memberList = Collections.unmodifiableList(all);
+        availablePeers = Collections.unmodifiableList(available);
+    }
+}
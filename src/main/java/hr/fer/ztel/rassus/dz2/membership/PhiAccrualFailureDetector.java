@@ -0,0 +1,109 @@
+package hr.fer.ztel.rassus.dz2.membership;
+
+/**
+ * Phi accrual failure detector of a single peer, as described by Hayashibara
+ * et al. Instead of a fixed timeout, it keeps the mean and the standard
+ * deviation of the last intervals between heartbeats and reports how
+ * unlikely it is that the next heartbeat is merely late:
+ * <pre>
+ * phi = -log10(1 - F(time since the last heartbeat))
+ * </pre>
+ * where <tt>F</tt> is the cumulative distribution function of the normal
+ * distribution with the sampled mean and deviation, approximated with a
+ * logistic function. A phi of 8 means that a heartbeat this late would only
+ * happen once in 10^8 intervals. Heartbeats over a lossy or jittery link
+ * have a larger deviation, so the peer is suspected later.
+ * <p>
+ * Until enough heartbeats arrived, the detector assumes intervals around
+ * the expected heartbeat interval. Thread-safe.
+ */
+class PhiAccrualFailureDetector {
+
+    /** Number of intervals kept for the mean and the deviation. */
+    private static final int MAX_SAMPLES = 200;
+
+    private final long minStdDeviationMillis;
+    private final long acceptablePauseMillis;
+
+    private final long[] intervals = new long[MAX_SAMPLES];
+    private int count;
+    private int next;
+    private long sum;
+    private long squaredSum;
+    private long lastHeartbeatMillis;
+
+    /**
+     * Creates a detector that treats the given time as the last heartbeat.
+     *
+     * @param expectedIntervalMillis interval between two heartbeats the peer sends
+     * @param acceptablePauseMillis additional time a heartbeat may be late
+     * @param nowMillis current time, in milliseconds
+     */
+    PhiAccrualFailureDetector(long expectedIntervalMillis, long acceptablePauseMillis, long nowMillis) {
+        this.minStdDeviationMillis = Math.max(1, expectedIntervalMillis / 4);
+        this.acceptablePauseMillis = acceptablePauseMillis;
+
+        // Two samples around the expected interval, with the minimum deviation
+        sample(expectedIntervalMillis - minStdDeviationMillis);
+        sample(expectedIntervalMillis + minStdDeviationMillis);
+        this.lastHeartbeatMillis = nowMillis;
+    }
+
+    /**
+     * Treats the given time as the last heartbeat, keeping the sampled
+     * intervals.
+     *
+     * @param nowMillis current time, in milliseconds
+     */
+    synchronized void restart(long nowMillis) {
+        lastHeartbeatMillis = nowMillis;
+    }
+
+    /**
+     * Records a heartbeat arriving at the given time.
+     *
+     * @param nowMillis arrival time, in milliseconds
+     */
+    synchronized void heartbeat(long nowMillis) {
+        long interval = nowMillis - lastHeartbeatMillis;
+        if (interval <= 0) {
+            return; // duplicate heartbeat or a clock step back
+        }
+        sample(interval);
+        lastHeartbeatMillis = nowMillis;
+    }
+
+    private void sample(long interval) {
+        if (count == MAX_SAMPLES) {
+            long oldest = intervals[next];
+            sum -= oldest;
+            squaredSum -= oldest * oldest;
+        } else {
+            count++;
+        }
+        intervals[next] = interval;
+        next = (next + 1) % MAX_SAMPLES;
+        sum += interval;
+        squaredSum += interval * interval;
+    }
+
+    /**
+     * Returns the suspicion level of the peer at the given time.
+     *
+     * @param nowMillis current time, in milliseconds
+     * @return phi, zero or greater
+     */
+    synchronized double phi(long nowMillis) {
+        double mean = (double) sum / count;
+        double variance = (double) squaredSum / count - mean * mean;
+        double deviation = Math.max(Math.sqrt(Math.max(0, variance)), minStdDeviationMillis);
+
+        double elapsed = nowMillis - lastHeartbeatMillis;
+        double y = (elapsed - mean - acceptablePauseMillis) / deviation;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (y > 0) {
+            return -Math.log10(e / (1 + e));
+        }
+        return -Math.log10(1 - 1 / (1 + e));
+    }
+}
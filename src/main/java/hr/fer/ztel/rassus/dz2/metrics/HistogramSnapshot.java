@@ -0,0 +1,32 @@
+package hr.fer.ztel.rassus.dz2.metrics;
+
+import hr.fer.ztel.rassus.dz2.aggregate.LogLinearHistogram;
+import lombok.Value;
+
+/**
+ * Count and quantiles of a histogram at one point in time.
+ */
+@Value
+public class HistogramSnapshot {
+
+    private final long count;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long max;
+
+    /**
+     * Takes a snapshot of the given histogram.
+     *
+     * @param histogram the histogram
+     * @return snapshot of the histogram
+     */
+    public static HistogramSnapshot of(LogLinearHistogram histogram) {
+        return new HistogramSnapshot(
+                histogram.getCount(),
+                histogram.getValueAtQuantile(0.5),
+                histogram.getValueAtQuantile(0.9),
+                histogram.getValueAtQuantile(0.99),
+                histogram.getValueAtQuantile(1));
+    }
+}
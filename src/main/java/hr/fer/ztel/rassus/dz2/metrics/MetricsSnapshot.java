@@ -0,0 +1,24 @@
+package hr.fer.ztel.rassus.dz2.metrics;
+
+import lombok.Value;
+
+import java.util.Map;
+
+/**
+ * All metrics of a node at one point in time.
+ */
+@Value
+public class MetricsSnapshot {
+
+    private final Map<NodeMetrics.Counter, Long> counters;
+    /** Packets skipped by later packets of the same sender that have not arrived yet. */
+    private final long packetsMissing;
+    /** Largest skew from the clock of any peer with its uncertainty, in milliseconds. */
+    private final long clockSkewBoundMillis;
+    /** Time the clocks of the node are locked while storing a measurement, in nanoseconds. */
+    private final HistogramSnapshot storeLockNanos;
+    /** Duration of the sort job, in microseconds. */
+    private final HistogramSnapshot sortJobMicros;
+    /** Round-trip time of confirmations by neighbour, in milliseconds. */
+    private final Map<String, HistogramSnapshot> rttMillis;
+}
@@ -0,0 +1,290 @@
+package hr.fer.ztel.rassus.dz2.metrics;
+
+import hr.fer.ztel.rassus.dz2.aggregate.LogLinearHistogram;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.SocketAddress;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and latency histograms of a single node. Counting is a
+ * {@link LongAdder} increment and recording a latency is a single atomic
+ * increment of a {@link LogLinearHistogram}, so metrics can be updated on
+ * every packet. Reading them is more expensive and is done only by JMX
+ * clients and periodic snapshots.
+ */
+@Log4j2
+public class NodeMetrics implements NodeMetricsMXBean {
+
+    /**
+     * Events counted by a node.
+     */
+    public enum Counter {
+        /** Packets sent to a neighbour for the first time. */
+        PACKETS_SENT,
+        /** Measurements in packets sent to a neighbour for the first time. */
+        MEASUREMENTS_SENT,
+        /** Packets sent again after their retransmission timer expired. */
+        PACKETS_RETRANSMITTED,
+        /** Packets given up on after the maximum number of attempts. */
+        PACKETS_EXPIRED,
+        /** Packets dropped because the send queue of a neighbour was full or the neighbour failed. */
+        PACKETS_DROPPED,
+        /** Confirmations of packets in flight. */
+        CONFIRMATIONS_RECEIVED,
+        /** Measurement packets received from neighbours, including duplicates. */
+        PACKETS_RECEIVED,
+        /** Received packets that had already been stored. */
+        PACKETS_DUPLICATED,
+        /** Received datagrams that could not be decoded. */
+        PACKETS_MALFORMED,
+        /** Received packets naming nodes that are not known yet, rejected without confirmation. */
+        PACKETS_REJECTED,
+        /** Packets sent on to other nodes after being received for the first time, in gossip mode. */
+        PACKETS_FORWARDED,
+        /** Measurements stored by the node, both own and received. */
+        MEASUREMENTS_STORED,
+        /** Scheduled measurements not taken because the node fell behind. */
+        MEASUREMENTS_SKIPPED
+    }
+
+    private static final int PRECISION_BITS = 5;
+    private static final long MAX_NANOS = 1_000_000_000L;
+    private static final long MAX_MICROS = 60_000_000L;
+    private static final long MAX_MILLIS = 60_000L;
+
+    @Getter private final String nodeName;
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private final LogLinearHistogram storeLockNanos = new LogLinearHistogram(PRECISION_BITS, MAX_NANOS);
+    private final LogLinearHistogram sortJobMicros = new LogLinearHistogram(PRECISION_BITS, MAX_MICROS);
+    private final ConcurrentMap<String, LogLinearHistogram> rttMillis = new ConcurrentHashMap<>();
+    private volatile LongSupplier missingPackets = () -> 0;
+    private volatile LongSupplier clockSkewBound = () -> 0;
+
+    private ObjectName objectName;
+
+    public NodeMetrics(String nodeName) {
+        this.nodeName = nodeName;
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Counts one occurrence of the given event.
+     *
+     * @param counter the event
+     */
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    /**
+     * Counts the given number of occurrences of the event.
+     *
+     * @param counter the event
+     * @param count number of occurrences
+     */
+    public void add(Counter counter, long count) {
+        counters[counter.ordinal()].add(count);
+    }
+
+    /**
+     * Returns the number of occurrences of the given event.
+     *
+     * @param counter the event
+     * @return number of occurrences
+     */
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * Sets the gauge of packets that were skipped by later packets of the
+     * same sender and have not arrived yet.
+     *
+     * @param missingPackets supplier of the number of missing packets
+     */
+    public void setMissingPackets(LongSupplier missingPackets) {
+        this.missingPackets = missingPackets;
+    }
+
+    /**
+     * Sets the gauge of the largest skew from the clock of any peer, as
+     * last measured by clock synchronization.
+     *
+     * @param clockSkewBound supplier of the skew bound, in milliseconds
+     */
+    public void setClockSkewBound(LongSupplier clockSkewBound) {
+        this.clockSkewBound = clockSkewBound;
+    }
+
+    public void recordStoreLockNanos(long nanos) {
+        storeLockNanos.record(nanos);
+    }
+
+    public void recordSortJobMicros(long micros) {
+        sortJobMicros.record(micros);
+    }
+
+    /**
+     * Returns the histogram of round-trip times to the given neighbour, in
+     * milliseconds. Callers are expected to keep the histogram instead of
+     * looking it up for every sample.
+     *
+     * @param neighbour address of the neighbour
+     * @return histogram of round-trip times
+     */
+    public LogLinearHistogram rttHistogram(SocketAddress neighbour) {
+        return rttMillis.computeIfAbsent(neighbour.toString(), k -> new LogLinearHistogram(PRECISION_BITS, MAX_MILLIS));
+    }
+
+    /**
+     * Takes a snapshot of all metrics.
+     *
+     * @return snapshot of all metrics
+     */
+    public MetricsSnapshot snapshot() {
+        Map<Counter, Long> counterValues = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            counterValues.put(counter, get(counter));
+        }
+        return new MetricsSnapshot(counterValues, getPacketsMissing(), getClockSkewBoundMillis(),
+                getStoreLockNanos(), getSortJobMicros(), getRttMillis());
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server under
+     * <tt>hr.fer.ztel.rassus.dz2:type=Node,name=&lt;node name&gt;</tt>.
+     * Failing to register is logged and otherwise ignored.
+     */
+    public synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("hr.fer.ztel.rassus.dz2:type=Node,name=" + ObjectName.quote(nodeName));
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            log.warn("Unable to register metrics of node {} with JMX", nodeName, e);
+        }
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server, if registered.
+     */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            log.warn("Unable to unregister metrics of node {} from JMX", nodeName, e);
+        }
+        objectName = null;
+    }
+
+    @Override
+    public long getPacketsSent() {
+        return get(Counter.PACKETS_SENT);
+    }
+
+    @Override
+    public long getMeasurementsSent() {
+        return get(Counter.MEASUREMENTS_SENT);
+    }
+
+    @Override
+    public long getPacketsRetransmitted() {
+        return get(Counter.PACKETS_RETRANSMITTED);
+    }
+
+    @Override
+    public long getPacketsExpired() {
+        return get(Counter.PACKETS_EXPIRED);
+    }
+
+    @Override
+    public long getPacketsDropped() {
+        return get(Counter.PACKETS_DROPPED);
+    }
+
+    @Override
+    public long getConfirmationsReceived() {
+        return get(Counter.CONFIRMATIONS_RECEIVED);
+    }
+
+    @Override
+    public long getPacketsReceived() {
+        return get(Counter.PACKETS_RECEIVED);
+    }
+
+    @Override
+    public long getPacketsDuplicated() {
+        return get(Counter.PACKETS_DUPLICATED);
+    }
+
+    @Override
+    public long getPacketsMalformed() {
+        return get(Counter.PACKETS_MALFORMED);
+    }
+
+    @Override
+    public long getPacketsRejected() {
+        return get(Counter.PACKETS_REJECTED);
+    }
+
+    @Override
+    public long getPacketsForwarded() {
+        return get(Counter.PACKETS_FORWARDED);
+    }
+
+    @Override
+    public long getMeasurementsStored() {
+        return get(Counter.MEASUREMENTS_STORED);
+    }
+
+    @Override
+    public long getMeasurementsSkipped() {
+        return get(Counter.MEASUREMENTS_SKIPPED);
+    }
+
+    @Override
+    public long getPacketsMissing() {
+        return missingPackets.getAsLong();
+    }
+
+    @Override
+    public long getClockSkewBoundMillis() {
+        return clockSkewBound.getAsLong();
+    }
+
+    @Override
+    public HistogramSnapshot getStoreLockNanos() {
+        return HistogramSnapshot.of(storeLockNanos);
+    }
+
+    @Override
+    public HistogramSnapshot getSortJobMicros() {
+        return HistogramSnapshot.of(sortJobMicros);
+    }
+
+    @Override
+    public Map<String, HistogramSnapshot> getRttMillis() {
+        Map<String, HistogramSnapshot> snapshots = new TreeMap<>();
+        rttMillis.forEach((neighbour, histogram) -> snapshots.put(neighbour, HistogramSnapshot.of(histogram)));
+        return snapshots;
+    }
+}
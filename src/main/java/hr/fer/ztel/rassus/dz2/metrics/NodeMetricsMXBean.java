@@ -0,0 +1,46 @@
+package hr.fer.ztel.rassus.dz2.metrics;
+
+import java.util.Map;
+
+/**
+ * Metrics of a node exposed through JMX, see {@link NodeMetrics}.
+ */
+public interface NodeMetricsMXBean {
+
+    long getPacketsSent();
+
+    long getMeasurementsSent();
+
+    long getPacketsRetransmitted();
+
+    long getPacketsExpired();
+
+    long getPacketsDropped();
+
+    long getConfirmationsReceived();
+
+    long getPacketsReceived();
+
+    long getPacketsDuplicated();
+
+    long getPacketsMalformed();
+
+    long getPacketsRejected();
+
+    long getPacketsForwarded();
+
+    long getMeasurementsStored();
+
+    long getMeasurementsSkipped();
+
+    long getPacketsMissing();
+
+    long getClockSkewBoundMillis();
+
+    HistogramSnapshot getStoreLockNanos();
+
+    HistogramSnapshot getSortJobMicros();
+
+    Map<String, HistogramSnapshot> getRttMillis();
+
+}
@@ -0,0 +1,16 @@
+package hr.fer.ztel.rassus.dz2.model;
+
+import lombok.Value;
+
+/**
+ * Measurement stored by a node, together with the node it came from.
+ */
+@Value
+public class LoggedMeasurement {
+
+    /** Index of the node that took the measurement. */
+    private final int source;
+    /** Measurement with the timestamps it was stored with. */
+    private final TimestampedMeasurement measurement;
+
+}
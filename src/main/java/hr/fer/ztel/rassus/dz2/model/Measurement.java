@@ -11,19 +11,45 @@ import lombok.ToString;
 @EqualsAndHashCode
 public class Measurement {
 
+    private final Integer temperature;
+    private final Integer pressure;
+    private final Integer humidity;
     private final Integer co;
+    private final Integer no2;
+    private final Integer so2;
+
+    /**
+     * Returns the value of the given field, or <tt>null</tt> if it was not measured.
+     *
+     * @param field the field
+     * @return the value of the field
+     */
+    public Integer get(MeasurementField field) {
+        switch (field) {
+            case TEMPERATURE: return temperature;
+            case PRESSURE:    return pressure;
+            case HUMIDITY:    return humidity;
+            case CO:          return co;
+            case NO2:         return no2;
+            case SO2:         return so2;
+            default: throw new IllegalArgumentException("Unknown field: " + field);
+        }
+    }
 
     public static Measurement parseFromCSV(String s) {
         try {
-            // Split tokens and extract required parameters
+            // Split tokens, one for each field in column order
             String[] tokens = s.split(",", -1);
 
             // Create builder
             MeasurementBuilder builder = new MeasurementBuilder();
 
             // Set optional parameters
-            if (!tokens[3].isEmpty()) {
-                builder.co(Integer.parseInt(tokens[3]));
+            for (MeasurementField field : MeasurementField.values()) {
+                String token = field.ordinal() < tokens.length ? tokens[field.ordinal()] : "";
+                if (!token.isEmpty()) {
+                    builder.set(field, Integer.parseInt(token));
+                }
             }
 
             return builder.build();
@@ -32,4 +58,26 @@ public class Measurement {
         }
     }
 
+    public static class MeasurementBuilder {
+
+        /**
+         * Sets the value of the given field.
+         *
+         * @param field the field
+         * @param value value of the field
+         * @return this builder
+         */
+        public MeasurementBuilder set(MeasurementField field, int value) {
+            switch (field) {
+                case TEMPERATURE: return temperature(value);
+                case PRESSURE:    return pressure(value);
+                case HUMIDITY:    return humidity(value);
+                case CO:          return co(value);
+                case NO2:         return no2(value);
+                case SO2:         return so2(value);
+                default: throw new IllegalArgumentException("Unknown field: " + field);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,67 @@
+package hr.fer.ztel.rassus.dz2.model;
+
+/**
+ * Sensor fields of a measurement, in the order of the columns of the
+ * measurements CSV file.
+ */
+public enum MeasurementField {
+    TEMPERATURE("Temperature"),
+    PRESSURE("Pressure"),
+    HUMIDITY("Humidity"),
+    CO("CO"),
+    NO2("NO2"),
+    SO2("SO2");
+
+    /** All fields, indexed by {@link #ordinal()}. */
+    private static final MeasurementField[] VALUES = values();
+
+    private final String column;
+
+    MeasurementField(String column) {
+        this.column = column;
+    }
+
+    /**
+     * Returns the name of the CSV column of this field.
+     *
+     * @return the column name
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the field with the given index.
+     *
+     * @param index index of the field
+     * @return the field
+     */
+    public static MeasurementField get(int index) {
+        return VALUES[index];
+    }
+
+    /**
+     * Returns the number of fields.
+     *
+     * @return the number of fields
+     */
+    public static int count() {
+        return VALUES.length;
+    }
+
+    /**
+     * Returns the field with the given CSV column name, ignoring case, or
+     * <tt>null</tt> if there is no such field.
+     *
+     * @param column column name
+     * @return the field, or <tt>null</tt>
+     */
+    public static MeasurementField forColumn(String column) {
+        for (MeasurementField field : VALUES) {
+            if (field.column.equalsIgnoreCase(column.trim())) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
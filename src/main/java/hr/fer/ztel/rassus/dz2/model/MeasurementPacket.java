@@ -1,15 +1,37 @@
 package hr.fer.ztel.rassus.dz2.model;
 
-import hr.fer.ztel.rassus.dz2.timestamp.ScalarTimestamp;
-import hr.fer.ztel.rassus.dz2.timestamp.VectorTimestamp;
 import lombok.Value;
 
+import java.util.List;
+
+/**
+ * Packet with a batch of measurements sent from one node to another. The
+ * whole batch is confirmed with a single confirmation.
+ * <p>
+ * In gossip mode a packet is forwarded unchanged from node to node, except
+ * for its remaining rounds, so the sender, epoch and sequence number always
+ * identify the node that took the measurements and the packet it created.
+ */
 @Value
 public class MeasurementPacket {
 
-    private final String id;
-    private final Measurement measurement;
-    private final ScalarTimestamp scalarTimestamp;
-    private final VectorTimestamp vectorTimestamp;
+    /** Index of the node that sent the packet. */
+    private final int sender;
+    /**
+     * Epoch of the sequence numbers, later than every earlier epoch of the
+     * sender to the same receiver. A sender never reuses a sequence number
+     * within an epoch, it starts a new epoch whenever its sequence numbers
+     * start again, after a restart or when a departed receiver rejoins.
+     */
+    private final long epoch;
+    /**
+     * Number of the packet among packets from the sender in this epoch to the
+     * same receiver, or to all receivers in gossip mode.
+     */
+    private final long sequence;
+    /** Number of times the packet is still forwarded in gossip mode, zero if it is not. */
+    private final int rounds;
+    /** Measurements with their timestamps, in the order they were taken. */
+    private final List<TimestampedMeasurement> measurements;
 
 }
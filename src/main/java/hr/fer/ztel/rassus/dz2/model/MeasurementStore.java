@@ -0,0 +1,160 @@
+package hr.fer.ztel.rassus.dz2.model;
+
+import java.util.Arrays;
+
+/**
+ * Immutable columnar store of measurements. Each field is kept in its own
+ * primitive array, with a bitmap marking the rows in which the field has no
+ * value, so values can be read and aggregated by row and field index without
+ * creating {@link Measurement} objects or boxing.
+ */
+public class MeasurementStore {
+
+    /** Values of each field, indexed by field and then by row. */
+    private final int[][] columns;
+    /** Bitmap of missing values of each field, one bit per row. */
+    private final long[][] nulls;
+    private final int size;
+
+    private MeasurementStore(int[][] columns, long[][] nulls, int size) {
+        this.columns = columns;
+        this.nulls = nulls;
+        this.size = size;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the field has no value in the given row.
+     *
+     * @param row index of the row
+     * @param field the field
+     * @return <tt>true</tt> if the value is missing
+     */
+    public boolean isNull(int row, MeasurementField field) {
+        checkRow(row);
+        return (nulls[field.ordinal()][row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Returns the value of the field in the given row, or 0 if it is missing.
+     *
+     * @param row index of the row
+     * @param field the field
+     * @return the value of the field
+     */
+    public int getInt(int row, MeasurementField field) {
+        checkRow(row);
+        return columns[field.ordinal()][row];
+    }
+
+    /**
+     * Returns the given row as a measurement object.
+     *
+     * @param row index of the row
+     * @return the measurement in the row
+     */
+    public Measurement getMeasurement(int row) {
+        Measurement.MeasurementBuilder builder = Measurement.builder();
+        for (MeasurementField field : MeasurementField.values()) {
+            if (!isNull(row, field)) {
+                builder.set(field, getInt(row, field));
+            }
+        }
+        return builder.build();
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + ", size " + size);
+        }
+    }
+
+    /**
+     * Returns a builder that appends rows to a new store.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Appends rows one field at a time. A field that is not set in a row is
+     * missing from that row.
+     */
+    public static class Builder {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private int[][] columns = new int[MeasurementField.count()][INITIAL_CAPACITY];
+        private long[][] nulls = new long[MeasurementField.count()][INITIAL_CAPACITY >>> 6];
+        private int size;
+        private boolean rowOpen;
+
+        /**
+         * Starts a new row with all fields missing.
+         *
+         * @return this builder
+         */
+        public Builder addRow() {
+            if (size == columns[0].length) {
+                grow();
+            }
+
+            for (long[] bitmap : nulls) {
+                bitmap[size >>> 6] |= 1L << size;
+            }
+            size++;
+            rowOpen = true;
+            return this;
+        }
+
+        /**
+         * Sets the value of the field in the current row.
+         *
+         * @param field the field
+         * @param value the value
+         * @return this builder
+         */
+        public Builder set(MeasurementField field, int value) {
+            if (!rowOpen) {
+                throw new IllegalStateException("No row was added.");
+            }
+
+            int row = size - 1;
+            columns[field.ordinal()][row] = value;
+            nulls[field.ordinal()][row >>> 6] &= ~(1L << row);
+            return this;
+        }
+
+        /**
+         * Creates the store with all rows added so far.
+         *
+         * @return a new store
+         */
+        public MeasurementStore build() {
+            int[][] c = new int[columns.length][];
+            long[][] n = new long[nulls.length][];
+            for (int i = 0; i < columns.length; i++) {
+                c[i] = Arrays.copyOf(columns[i], size);
+                n[i] = Arrays.copyOf(nulls[i], (size + 63) >>> 6);
+            }
+            return new MeasurementStore(c, n, size);
+        }
+
+        private void grow() {
+            int capacity = 2 * columns[0].length;
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = Arrays.copyOf(columns[i], capacity);
+                nulls[i] = Arrays.copyOf(nulls[i], capacity >>> 6);
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package hr.fer.ztel.rassus.dz2.model;
+
+import hr.fer.ztel.rassus.dz2.timestamp.ScalarTimestamp;
+import hr.fer.ztel.rassus.dz2.timestamp.VectorTimestamp;
+import lombok.Value;
+
+@Value
+public class TimestampedMeasurement {
+
+    private final Measurement measurement;
+    private final ScalarTimestamp scalarTimestamp;
+    private final VectorTimestamp vectorTimestamp;
+
+}
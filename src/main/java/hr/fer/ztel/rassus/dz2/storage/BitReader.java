@@ -0,0 +1,54 @@
+package hr.fer.ztel.rassus.dz2.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stream of bits read most significant bit first from a region of a byte
+ * buffer, with absolute reads so the buffer may be shared between readers.
+ */
+class BitReader {
+
+    private final ByteBuffer buffer;
+    private final long endBit;
+    private long bit;
+
+    /**
+     * @param buffer buffer with the bits
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     */
+    BitReader(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.bit = 8L * offset;
+        this.endBit = 8L * (offset + length);
+    }
+
+    /**
+     * Reads <tt>n</tt> bits as the lowest bits of a value.
+     *
+     * @param n number of bits, from 0 to 64
+     * @return the value
+     * @throws IllegalStateException if there are fewer bits left
+     */
+    long readBits(int n) {
+        if (bit + n > endBit) {
+            throw new IllegalStateException("Read past the end of a bit stream");
+        }
+
+        long value = 0;
+        while (n > 0) {
+            int available = 8 - (int) (bit & 7);
+            int taken = Math.min(available, n);
+            int current = buffer.get((int) (bit >>> 3)) & 0xFF;
+            int bits = (current >>> (available - taken)) & ((1 << taken) - 1);
+            value = (value << taken) | bits;
+            bit += taken;
+            n -= taken;
+        }
+        return value;
+    }
+
+    boolean readBit() {
+        return readBits(1) != 0;
+    }
+}
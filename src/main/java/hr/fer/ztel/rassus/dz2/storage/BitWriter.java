@@ -0,0 +1,67 @@
+package hr.fer.ztel.rassus.dz2.storage;
+
+import java.util.Arrays;
+
+/**
+ * Growable stream of bits, written most significant bit first.
+ */
+class BitWriter {
+
+    private byte[] bytes;
+    /** Number of bits written. */
+    private long bitCount;
+
+    BitWriter(int initialCapacity) {
+        this.bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Writes the lowest <tt>n</tt> bits of the value.
+     *
+     * @param value the value
+     * @param n number of bits, from 0 to 64
+     */
+    void writeBits(long value, int n) {
+        ensureCapacity(bitCount + n);
+        while (n > 0) {
+            int index = (int) (bitCount >>> 3);
+            int free = 8 - (int) (bitCount & 7);
+            int taken = Math.min(free, n);
+            int bits = (int) (value >>> (n - taken)) & ((1 << taken) - 1);
+            bytes[index] |= bits << (free - taken);
+            bitCount += taken;
+            n -= taken;
+        }
+    }
+
+    void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    private void ensureCapacity(long bits) {
+        int needed = (int) ((bits + 7) >>> 3);
+        if (needed > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(needed, 2 * bytes.length));
+        }
+    }
+
+    /**
+     * Returns the number of bytes taken by the bits written so far.
+     */
+    int byteSize() {
+        return (int) ((bitCount + 7) >>> 3);
+    }
+
+    /**
+     * Returns the array backing the stream; only the first
+     * {@link #byteSize()} bytes are written.
+     */
+    byte[] array() {
+        return bytes;
+    }
+
+    void reset() {
+        Arrays.fill(bytes, 0, byteSize(), (byte) 0);
+        bitCount = 0;
+    }
+}
@@ -0,0 +1,135 @@
+package hr.fer.ztel.rassus.dz2.storage;
+
+import hr.fer.ztel.rassus.dz2.model.LoggedMeasurement;
+import hr.fer.ztel.rassus.dz2.model.Measurement;
+import hr.fer.ztel.rassus.dz2.model.MeasurementField;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+import hr.fer.ztel.rassus.dz2.timestamp.ScalarTimestamp;
+import hr.fer.ztel.rassus.dz2.timestamp.VectorTimestamp;
+
+import java.nio.ByteBuffer;
+
+import static hr.fer.ztel.rassus.dz2.storage.MeasurementBlockEncoder.BUCKET_BITS;
+import static hr.fer.ztel.rassus.dz2.storage.MeasurementBlockEncoder.CARDINALITY_BITS;
+import static hr.fer.ztel.rassus.dz2.storage.MeasurementBlockEncoder.FIELDS_BITS;
+import static hr.fer.ztel.rassus.dz2.storage.MeasurementBlockEncoder.SOURCE_BITS;
+
+/**
+ * Streaming decoder of a block written by {@link MeasurementBlockEncoder}.
+ * Every call of {@link #advance()} decodes the next measurement into
+ * primitive state, and an object is only created for the measurements
+ * that are asked for with {@link #current()}, so skipping measurements of
+ * a block, for example those outside of a time range, creates no garbage.
+ * <p>
+ * Decoders read the buffer with absolute reads and are not thread-safe.
+ */
+public class MeasurementBlockDecoder {
+
+    private final BitReader in;
+    private final int count;
+    private int decoded;
+
+    private long timestamp;
+    private long previousDelta;
+    private int source;
+    private int fields;
+    private final int[] values = new int[MeasurementField.count()];
+    private int[] vector = new int[0];
+
+    /**
+     * Creates a decoder of the block in the given region of the buffer.
+     *
+     * @param buffer buffer with the block
+     * @param offset offset of the block
+     * @param length size of the block, in bytes
+     * @param count number of measurements in the block
+     */
+    public MeasurementBlockDecoder(ByteBuffer buffer, int offset, int length, int count) {
+        this.in = new BitReader(buffer, offset, length);
+        this.count = count;
+    }
+
+    /**
+     * Decodes the next measurement.
+     *
+     * @return <tt>false</tt> if all measurements of the block were decoded
+     * @throws IllegalStateException if the block is truncated
+     */
+    public boolean advance() {
+        if (decoded == count) {
+            return false;
+        }
+
+        if (decoded == 0) {
+            timestamp = in.readBits(64);
+        } else {
+            long delta = previousDelta + readSigned();
+            timestamp += delta;
+            previousDelta = delta;
+        }
+
+        if (in.readBit()) {
+            source = (int) in.readBits(SOURCE_BITS);
+        }
+        if (in.readBit()) {
+            fields = (int) in.readBits(FIELDS_BITS);
+        }
+        for (int i = 0; i < values.length; i++) {
+            if ((fields & (1 << i)) != 0) {
+                values[i] += (int) readSigned();
+            }
+        }
+
+        if (in.readBit()) {
+            vector = new int[(int) in.readBits(CARDINALITY_BITS)];
+        }
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] += (int) readSigned();
+        }
+
+        decoded++;
+        return true;
+    }
+
+    private long readSigned() {
+        if (!in.readBit()) {
+            return 0;
+        }
+
+        int bits = 64;
+        for (int bucket = 0; bucket < BUCKET_BITS.length; bucket++) {
+            if (!in.readBit()) {
+                bits = BUCKET_BITS[bucket];
+                break;
+            }
+        }
+        long zigZag = in.readBits(bits);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    /**
+     * Returns the scalar timestamp of the last decoded measurement.
+     *
+     * @return the scalar timestamp
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the last decoded measurement.
+     *
+     * @return the measurement
+     */
+    public LoggedMeasurement current() {
+        Measurement.MeasurementBuilder builder = Measurement.builder();
+        for (MeasurementField field : MeasurementField.values()) {
+            if ((fields & (1 << field.ordinal())) != 0) {
+                builder.set(field, values[field.ordinal()]);
+            }
+        }
+
+        return new LoggedMeasurement(source, new TimestampedMeasurement(
+                builder.build(), new ScalarTimestamp(timestamp), new VectorTimestamp(vector)));
+    }
+}
@@ -0,0 +1,196 @@
+package hr.fer.ztel.rassus.dz2.storage;
+
+import hr.fer.ztel.rassus.dz2.model.LoggedMeasurement;
+import hr.fer.ztel.rassus.dz2.model.Measurement;
+import hr.fer.ztel.rassus.dz2.model.MeasurementField;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+import hr.fer.ztel.rassus.dz2.timestamp.VectorTimestamp;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Streaming encoder of a compressed block of measurements, in the style of
+ * the Gorilla time series format. Every value is written relative to the
+ * same value of the previous measurement in the block:
+ * <ul>
+ * <li>scalar timestamps as the delta of the delta, which is zero when
+ *     measurements are taken at a fixed rate,</li>
+ * <li>the source node and the set of present fields as a single bit when
+ *     they did not change,</li>
+ * <li>each present field and each vector timestamp component as the
+ *     zig-zag encoded difference from its previous value.</li>
+ * </ul>
+ * Signed differences use a variable number of bits:
+ * <pre>
+ * '0'                      zero
+ * '10'   + 7 bits          zig-zag value below 2^7
+ * '110'  + 9 bits          zig-zag value below 2^9
+ * '1110' + 12 bits         zig-zag value below 2^12
+ * '1111' + 64 bits         any other value
+ * </pre>
+ * The first measurement of a block is written relative to zero, except
+ * for its scalar timestamp which is written in full, so every block can be
+ * decoded on its own by a {@link MeasurementBlockDecoder}.
+ * <p>
+ * Encoders are reusable with {@link #reset()} and are not thread-safe.
+ */
+public class MeasurementBlockEncoder {
+
+    /** Number of bits of each bucket of signed values, see class documentation. */
+    static final int[] BUCKET_BITS = {7, 9, 12};
+    /** Number of bits of a value that changed, for the source, field set and cardinality. */
+    static final int SOURCE_BITS = 32;
+    static final int FIELDS_BITS = MeasurementField.count();
+    static final int CARDINALITY_BITS = 32;
+
+    private final BitWriter out = new BitWriter(1024);
+
+    @Getter private int count;
+    /** Smallest scalar timestamp in the block. */
+    @Getter private long minTimestamp = Long.MAX_VALUE;
+    /** Largest scalar timestamp in the block. */
+    @Getter private long maxTimestamp = Long.MIN_VALUE;
+
+    private long previousTimestamp;
+    private long previousDelta;
+    private int previousSource;
+    private int previousFields;
+    private final int[] previousValues = new int[MeasurementField.count()];
+    private int[] previousVector = new int[0];
+
+    /**
+     * Appends the measurement to the block.
+     *
+     * @param logged the measurement
+     */
+    public void add(LoggedMeasurement logged) {
+        TimestampedMeasurement timestamped = logged.getMeasurement();
+        long timestamp = timestamped.getScalarTimestamp().getValue();
+        if (count == 0) {
+            out.writeBits(timestamp, 64);
+        } else {
+            long delta = timestamp - previousTimestamp;
+            writeSigned(delta - previousDelta);
+            previousDelta = delta;
+        }
+        previousTimestamp = timestamp;
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+
+        int source = logged.getSource();
+        if (count > 0 && source == previousSource) {
+            out.writeBit(false);
+        } else {
+            out.writeBit(true);
+            out.writeBits(source, SOURCE_BITS);
+            previousSource = source;
+        }
+
+        Measurement measurement = timestamped.getMeasurement();
+        int fields = 0;
+        for (MeasurementField field : MeasurementField.values()) {
+            if (measurement.get(field) != null) {
+                fields |= 1 << field.ordinal();
+            }
+        }
+        if (count > 0 && fields == previousFields) {
+            out.writeBit(false);
+        } else {
+            out.writeBit(true);
+            out.writeBits(fields, FIELDS_BITS);
+            previousFields = fields;
+        }
+        for (MeasurementField field : MeasurementField.values()) {
+            Integer value = measurement.get(field);
+            if (value != null) {
+                writeSigned((long) value - previousValues[field.ordinal()]);
+                previousValues[field.ordinal()] = value;
+            }
+        }
+
+        VectorTimestamp vector = timestamped.getVectorTimestamp();
+        if (count > 0 && vector.size() == previousVector.length) {
+            out.writeBit(false);
+        } else {
+            out.writeBit(true);
+            out.writeBits(vector.size(), CARDINALITY_BITS);
+            previousVector = new int[vector.size()];
+        }
+        for (int i = 0; i < previousVector.length; i++) {
+            int value = vector.get(i);
+            writeSigned((long) value - previousVector[i]);
+            previousVector[i] = value;
+        }
+
+        count++;
+    }
+
+    private void writeSigned(long value) {
+        if (value == 0) {
+            out.writeBit(false);
+            return;
+        }
+
+        long zigZag = (value << 1) ^ (value >> 63);
+        for (int bucket = 0; bucket < BUCKET_BITS.length; bucket++) {
+            int bits = BUCKET_BITS[bucket];
+            if (zigZag >>> bits == 0) {
+                // 'bucket + 1' ones followed by a zero
+                out.writeBits((1L << (bucket + 2)) - 2, bucket + 2);
+                out.writeBits(zigZag, bits);
+                return;
+            }
+        }
+        out.writeBits(0b1111, 4);
+        out.writeBits(zigZag, 64);
+    }
+
+    /**
+     * Returns an upper bound of the number of bytes the measurement would
+     * add to the block.
+     *
+     * @param logged the measurement
+     * @return upper bound of the encoded size, in bytes
+     */
+    public static int maxEncodedSize(LoggedMeasurement logged) {
+        int values = MeasurementField.count() + logged.getMeasurement().getVectorTimestamp().size();
+        int bits = 68 + 1 + SOURCE_BITS + 1 + FIELDS_BITS + 1 + CARDINALITY_BITS + 68 * values;
+        return (bits + 7) / 8;
+    }
+
+    /**
+     * Returns the number of bytes of the encoded block.
+     *
+     * @return size of the block, in bytes
+     */
+    public int byteSize() {
+        return out.byteSize();
+    }
+
+    /**
+     * Returns the array backing the encoded block; only the first
+     * {@link #byteSize()} bytes belong to it.
+     *
+     * @return the encoded block
+     */
+    public byte[] array() {
+        return out.array();
+    }
+
+    /**
+     * Discards all measurements, so the encoder can start a new block.
+     */
+    public void reset() {
+        out.reset();
+        count = 0;
+        minTimestamp = Long.MAX_VALUE;
+        maxTimestamp = Long.MIN_VALUE;
+        previousTimestamp = 0;
+        previousDelta = 0;
+        previousSource = 0;
+        previousFields = 0;
+        Arrays.fill(previousValues, 0);
+        previousVector = new int[0];
+    }
+}
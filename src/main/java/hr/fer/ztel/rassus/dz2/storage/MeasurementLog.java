@@ -0,0 +1,232 @@
+package hr.fer.ztel.rassus.dz2.storage;
+
+import hr.fer.ztel.rassus.dz2.model.LoggedMeasurement;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Durable append-only log of measurements, kept in a directory as a
+ * sequence of memory-mapped {@link Segment segments} of a fixed capacity.
+ * Measurements are appended to the last segment in compressed blocks; when
+ * it is full, it is sealed together with its index and a new segment is
+ * started.
+ * <p>
+ * Measurements are appended in groups, each written as a block and forced
+ * to the storage device with a single flush, so a caller that collects
+ * measurements for a while and then appends them pays for one flush per
+ * group. After a crash, the log is recovered up to the last block that
+ * was written completely.
+ * <p>
+ * Range queries by scalar timestamp read only the segments and blocks
+ * whose timestamps overlap the range, straight from the mapped files, so
+ * the history is never loaded onto the heap as a whole. Queries do not
+ * block appends for longer than it takes to take a view of the segments.
+ * <p>
+ * The directory is locked while the log is open, so two nodes can not
+ * write to the same log.
+ */
+@Log4j2
+public class MeasurementLog implements Closeable {
+
+    private static final String LOCK_FILE = "lock";
+    /** Maximum number of measurements in a compressed block. */
+    public static final int MAX_BLOCK_MEASUREMENTS = 4096;
+    /** Bytes taken by a block besides its measurements. */
+    private static final int BLOCK_OVERHEAD = Segment.BLOCK_HEADER_SIZE + Segment.BLOCK_BODY_HEADER_SIZE;
+
+    private final Path directory;
+    private final int segmentCapacity;
+    private final FileChannel lockChannel;
+    private final List<Segment> segments = new ArrayList<>();
+    private final MeasurementBlockEncoder encoder = new MeasurementBlockEncoder();
+    private final CRC32 crc = new CRC32();
+    private boolean closed;
+
+    private MeasurementLog(Path directory, int segmentCapacity, FileChannel lockChannel) {
+        this.directory = directory;
+        this.segmentCapacity = segmentCapacity;
+        this.lockChannel = lockChannel;
+    }
+
+    /**
+     * Opens the log in the given directory, creating the directory if it
+     * does not exist, and recovers the records of existing segments.
+     *
+     * @param directory directory of the log
+     * @param segmentCapacity capacity of a segment, in bytes
+     * @return the opened log
+     * @throws IOException if the log can not be opened or is already open
+     */
+    public static MeasurementLog open(Path directory, int segmentCapacity) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (!tryLock(lockChannel)) {
+                throw new IOException("Measurement log is already open: " + directory);
+            }
+
+            MeasurementLog measurementLog = new MeasurementLog(directory, segmentCapacity, lockChannel);
+            measurementLog.openSegments();
+            return measurementLog;
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Locks the channel, returning <tt>false</tt> if it is locked by another
+     * process or by another log in this virtual machine.
+     */
+    private static boolean tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock() != null;
+        } catch (OverlappingFileLockException e) {
+            return false;
+        }
+    }
+
+    private void openSegments() throws IOException {
+        TreeSet<Long> numbers = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(0, name.length() - ".log".length())));
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring unknown file in measurement log: {}", file);
+                }
+            }
+        }
+
+        if (numbers.isEmpty()) {
+            segments.add(Segment.create(0, directory, segmentCapacity));
+            return;
+        }
+        for (long number : numbers.headSet(numbers.last())) {
+            segments.add(Segment.openSealed(number, directory));
+        }
+        segments.add(Segment.openActive(numbers.last(), directory, segmentCapacity));
+        log.info("Opened measurement log {} with {} segments", directory, segments.size());
+    }
+
+    /**
+     * Appends all given measurements and forces them to the storage device
+     * with a single flush. Measurements are compressed into blocks of at
+     * most {@value #MAX_BLOCK_MEASUREMENTS}, so a group commit usually
+     * takes a single block.
+     *
+     * @param measurements the measurements
+     * @throws IOException if a new segment can not be created
+     * @throws IllegalArgumentException if a measurement does not fit into a segment
+     */
+    public synchronized void appendAll(Collection<LoggedMeasurement> measurements) throws IOException {
+        checkOpen();
+        for (LoggedMeasurement measurement : measurements) {
+            int maxSize = MeasurementBlockEncoder.maxEncodedSize(measurement);
+            if (BLOCK_OVERHEAD + maxSize > segmentCapacity - Segment.SEGMENT_HEADER_SIZE) {
+                throw new IllegalArgumentException("Measurement of up to " + maxSize + " bytes does not fit into a segment");
+            }
+
+            if (encoder.getCount() == MAX_BLOCK_MEASUREMENTS
+                    || BLOCK_OVERHEAD + encoder.byteSize() + maxSize > activeSegment().remaining()) {
+                writeBlock();
+                if (BLOCK_OVERHEAD + maxSize > activeSegment().remaining()) {
+                    roll();
+                }
+            }
+            encoder.add(measurement);
+        }
+        writeBlock();
+        activeSegment().force();
+    }
+
+    private void writeBlock() {
+        if (encoder.getCount() > 0) {
+            activeSegment().append(encoder, crc);
+            encoder.reset();
+        }
+    }
+
+    private void roll() throws IOException {
+        Segment active = activeSegment();
+        active.seal();
+        segments.add(Segment.create(active.getNumber() + 1, directory, segmentCapacity));
+    }
+
+    /**
+     * Passes every logged measurement with a scalar timestamp between the
+     * given bounds, inclusive, to the consumer, in the order they were
+     * appended.
+     *
+     * @param from smallest scalar timestamp
+     * @param to largest scalar timestamp
+     * @param consumer consumer of the measurements
+     */
+    public void forEach(long from, long to, Consumer<LoggedMeasurement> consumer) {
+        List<Segment.View> views = new ArrayList<>();
+        synchronized (this) {
+            checkOpen();
+            for (Segment segment : segments) {
+                views.add(segment.view());
+            }
+        }
+
+        for (Segment.View view : views) {
+            view.forEach(from, to, consumer);
+        }
+    }
+
+    /**
+     * Returns all logged measurements with a scalar timestamp between the
+     * given bounds, inclusive, in the order they were appended.
+     *
+     * @param from smallest scalar timestamp
+     * @param to largest scalar timestamp
+     * @return measurements in the range
+     */
+    public List<LoggedMeasurement> query(long from, long to) {
+        List<LoggedMeasurement> measurements = new ArrayList<>();
+        forEach(from, to, measurements::add);
+        return measurements;
+    }
+
+    private Segment activeSegment() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Measurement log is closed: " + directory);
+        }
+    }
+
+    /**
+     * Forces all appended records and releases the directory.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        activeSegment().force();
+        closed = true;
+        lockChannel.close();
+    }
+}
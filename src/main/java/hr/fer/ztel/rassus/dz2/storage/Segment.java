@@ -0,0 +1,360 @@
+package hr.fer.ztel.rassus.dz2.storage;
+
+import hr.fer.ztel.rassus.dz2.model.LoggedMeasurement;
+import lombok.Getter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Single memory-mapped file of a {@link MeasurementLog}. The file starts
+ * with a header, followed by compressed blocks of measurements laid out
+ * back to back:
+ * <pre>
+ * header:
+ *   int      magic number
+ *   int      format version
+ * each block:
+ *   int      length of the block body
+ *   int      CRC32 of the block body
+ *   body:
+ *     long     smallest scalar timestamp in the block
+ *     long     largest scalar timestamp in the block
+ *     int      number of measurements
+ *     bytes    measurements written by {@link MeasurementBlockEncoder}
+ * </pre>
+ * A mapped file is zero-filled past the last block, so a zero length, or
+ * a block that does not match its checksum after a crash, ends the segment.
+ * <p>
+ * The segment keeps a sparse index with an entry for roughly every 64 KiB
+ * of blocks, holding the smallest and the largest scalar timestamp of the
+ * blocks it covers, so a range query only reads the parts of the segment
+ * that may contain matching measurements, even if timestamps are not stored
+ * in order. When the segment is full, it is sealed: the file is truncated
+ * to its blocks and the index is written next to it.
+ * <p>
+ * Segments are not thread-safe; {@link MeasurementLog} guards them.
+ */
+class Segment {
+
+    /** Size of the header of a segment. */
+    static final int SEGMENT_HEADER_SIZE = 8;
+    /** Size of the length and checksum of a block. */
+    static final int BLOCK_HEADER_SIZE = 8;
+    /** Size of the timestamp bounds and measurement count of a block. */
+    static final int BLOCK_BODY_HEADER_SIZE = 20;
+    /** First bytes of a segment file. */
+    private static final int SEGMENT_MAGIC = 0x4D4C5347;
+    /** Version of the layout of blocks. */
+    private static final int SEGMENT_VERSION = 2;
+    /** Blocks are indexed in groups of roughly this many bytes. */
+    private static final int INDEX_INTERVAL = 64 * 1024;
+    /** First bytes of an index file. */
+    private static final int INDEX_MAGIC = 0x4D4C4958;
+
+    @Getter private final long number;
+    private final Path file;
+    private final Path indexFile;
+    private MappedByteBuffer buffer;
+
+    /** Number of bytes taken by the header and blocks. */
+    @Getter private int size;
+    @Getter private boolean sealed;
+
+    /** Offsets of the first blocks of index entries. */
+    private int[] entryOffsets = new int[16];
+    /** Smallest scalar timestamp of each index entry. */
+    private long[] entryMin = new long[16];
+    /** Largest scalar timestamp of each index entry. */
+    private long[] entryMax = new long[16];
+    private int entryCount;
+
+    private Segment(long number, Path directory) {
+        this.number = number;
+        this.file = directory.resolve(String.format("%020d.log", number));
+        this.indexFile = directory.resolve(String.format("%020d.idx", number));
+    }
+
+    /**
+     * Creates a new empty segment of the given capacity.
+     */
+    static Segment create(long number, Path directory, int capacity) throws IOException {
+        Segment segment = new Segment(number, directory);
+        segment.map(FileChannel.MapMode.READ_WRITE, capacity,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment.buffer.putInt(0, SEGMENT_MAGIC);
+        segment.buffer.putInt(4, SEGMENT_VERSION);
+        // A crash must not leave a file without a header, which could never be opened again
+        segment.buffer.force();
+        segment.size = SEGMENT_HEADER_SIZE;
+        return segment;
+    }
+
+    /**
+     * Opens an existing sealed segment, reading its index if it was written
+     * or rebuilding it from the blocks otherwise.
+     */
+    static Segment openSealed(long number, Path directory) throws IOException {
+        Segment segment = new Segment(number, directory);
+        long fileSize = Files.size(segment.file);
+        segment.map(FileChannel.MapMode.READ_ONLY, fileSize, StandardOpenOption.READ);
+        segment.checkHeader();
+        if (!segment.readIndex(fileSize)) {
+            segment.recover();
+        }
+        segment.sealed = true;
+        return segment;
+    }
+
+    /**
+     * Opens an existing segment for appending more blocks after the last
+     * valid one.
+     */
+    static Segment openActive(long number, Path directory, int capacity) throws IOException {
+        Segment segment = new Segment(number, directory);
+        long fileSize = Files.size(segment.file);
+        segment.map(FileChannel.MapMode.READ_WRITE, Math.max(capacity, fileSize),
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment.checkHeader();
+        segment.recover();
+        Files.deleteIfExists(segment.indexFile);
+        return segment;
+    }
+
+    private void map(FileChannel.MapMode mode, long length, StandardOpenOption... options) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Segment is too large: " + file);
+        }
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            buffer = channel.map(mode, 0, length);
+        }
+    }
+
+    private void checkHeader() throws IOException {
+        if (buffer.capacity() < SEGMENT_HEADER_SIZE
+                || buffer.getInt(0) != SEGMENT_MAGIC || buffer.getInt(4) != SEGMENT_VERSION) {
+            throw new IOException("Unsupported segment format: " + file);
+        }
+    }
+
+    /**
+     * Returns the number of bytes that can still be appended.
+     */
+    int remaining() {
+        return sealed ? 0 : buffer.capacity() - size;
+    }
+
+    /**
+     * Appends the block of the given encoder, which must fit into the
+     * remaining space of the segment.
+     *
+     * @param encoder encoder with at least one measurement
+     * @param crc checksum reused for every block
+     */
+    void append(MeasurementBlockEncoder encoder, CRC32 crc) {
+        int offset = size;
+        int length = BLOCK_BODY_HEADER_SIZE + encoder.byteSize();
+
+        ByteBuffer target = buffer.duplicate();
+        target.position(offset + BLOCK_HEADER_SIZE);
+        target.putLong(encoder.getMinTimestamp());
+        target.putLong(encoder.getMaxTimestamp());
+        target.putInt(encoder.getCount());
+        target.put(encoder.array(), 0, encoder.byteSize());
+
+        target.limit(target.position()).position(offset + BLOCK_HEADER_SIZE);
+        crc.reset();
+        crc.update(target);
+        buffer.putInt(offset, length);
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        size = offset + BLOCK_HEADER_SIZE + length;
+
+        index(offset, encoder.getMinTimestamp(), encoder.getMaxTimestamp());
+    }
+
+    private void index(int offset, long min, long max) {
+        if (entryCount == 0 || offset - entryOffsets[entryCount - 1] >= INDEX_INTERVAL) {
+            if (entryCount == entryOffsets.length) {
+                entryOffsets = Arrays.copyOf(entryOffsets, 2 * entryCount);
+                entryMin = Arrays.copyOf(entryMin, 2 * entryCount);
+                entryMax = Arrays.copyOf(entryMax, 2 * entryCount);
+            }
+            entryOffsets[entryCount] = offset;
+            entryMin[entryCount] = min;
+            entryMax[entryCount] = max;
+            entryCount++;
+        } else {
+            int last = entryCount - 1;
+            entryMin[last] = Math.min(entryMin[last], min);
+            entryMax[last] = Math.max(entryMax[last], max);
+        }
+    }
+
+    /**
+     * Writes appended blocks to the storage device.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Forces the blocks, truncates the file to their size and writes the
+     * index. No more blocks can be appended afterwards.
+     */
+    void seal() throws IOException {
+        force();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+            channel.force(true);
+        }
+        writeIndex();
+        sealed = true;
+    }
+
+    private void writeIndex() throws IOException {
+        Path temporary = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(size);
+            out.writeInt(entryCount);
+            for (int i = 0; i < entryCount; i++) {
+                out.writeInt(entryOffsets[i]);
+                out.writeLong(entryMin[i]);
+                out.writeLong(entryMax[i]);
+            }
+        }
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the index file, returning <tt>false</tt> if it is missing or
+     * does not describe a segment of the given size.
+     */
+    private boolean readIndex(long fileSize) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != fileSize) {
+                return false;
+            }
+            int count = in.readInt();
+            entryOffsets = new int[Math.max(1, count)];
+            entryMin = new long[entryOffsets.length];
+            entryMax = new long[entryOffsets.length];
+            for (int i = 0; i < count; i++) {
+                entryOffsets[i] = in.readInt();
+                entryMin[i] = in.readLong();
+                entryMax[i] = in.readLong();
+            }
+            entryCount = count;
+            size = (int) fileSize;
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Rebuilds the index by reading blocks until the first one that is
+     * missing, truncated or corrupted.
+     */
+    private void recover() {
+        CRC32 crc = new CRC32();
+        int offset = SEGMENT_HEADER_SIZE;
+        entryCount = 0;
+        while (offset + BLOCK_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length < BLOCK_BODY_HEADER_SIZE || length > buffer.capacity() - offset - BLOCK_HEADER_SIZE) {
+                break;
+            }
+
+            ByteBuffer checked = buffer.duplicate();
+            checked.limit(offset + BLOCK_HEADER_SIZE + length).position(offset + BLOCK_HEADER_SIZE);
+            crc.reset();
+            crc.update(checked);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+
+            int body = offset + BLOCK_HEADER_SIZE;
+            index(offset, buffer.getLong(body), buffer.getLong(body + 8));
+            offset += BLOCK_HEADER_SIZE + length;
+        }
+        size = offset;
+    }
+
+    /**
+     * Returns a view of the blocks appended so far, which stays valid
+     * while more blocks are appended.
+     */
+    View view() {
+        return new View(buffer, size, entryOffsets, entryMin, entryMax, entryCount);
+    }
+
+    /**
+     * View of the blocks of a segment at some point in time. It can be read
+     * without holding the lock of the log, since blocks are never changed
+     * once appended; the bounds of the last index entry may only widen.
+     */
+    static class View {
+        private final ByteBuffer buffer;
+        private final int size;
+        private final int[] entryOffsets;
+        private final long[] entryMin;
+        private final long[] entryMax;
+        private final int entryCount;
+
+        private View(ByteBuffer buffer, int size, int[] entryOffsets, long[] entryMin, long[] entryMax, int entryCount) {
+            this.buffer = buffer;
+            this.size = size;
+            this.entryOffsets = entryOffsets;
+            this.entryMin = entryMin;
+            this.entryMax = entryMax;
+            this.entryCount = entryCount;
+        }
+
+        /**
+         * Passes every measurement with a scalar timestamp in the given
+         * range to the consumer, in the order they were appended.
+         */
+        void forEach(long from, long to, Consumer<LoggedMeasurement> consumer) {
+            for (int entry = 0; entry < entryCount; entry++) {
+                if (entryMax[entry] < from || entryMin[entry] > to) {
+                    continue;
+                }
+
+                int end = entry + 1 < entryCount ? entryOffsets[entry + 1] : size;
+                for (int offset = entryOffsets[entry]; offset < end; offset += BLOCK_HEADER_SIZE + buffer.getInt(offset)) {
+                    readBlock(offset + BLOCK_HEADER_SIZE, buffer.getInt(offset), from, to, consumer);
+                }
+            }
+        }
+
+        private void readBlock(int body, int length, long from, long to, Consumer<LoggedMeasurement> consumer) {
+            if (buffer.getLong(body + 8) < from || buffer.getLong(body) > to) {
+                return;
+            }
+
+            MeasurementBlockDecoder decoder = new MeasurementBlockDecoder(buffer,
+                    body + BLOCK_BODY_HEADER_SIZE, length - BLOCK_BODY_HEADER_SIZE, buffer.getInt(body + 16));
+            while (decoder.advance()) {
+                long timestamp = decoder.timestamp();
+                if (timestamp >= from && timestamp <= to) {
+                    consumer.accept(decoder.current());
+                }
+            }
+        }
+    }
+}
@@ -4,19 +4,39 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 
+/**
+ * Emulated clock corrected by an offset, which clock synchronization
+ * adjusts towards the clocks of the other nodes.
+ */
 @Getter
 @Setter
 @RequiredArgsConstructor
 public class DecoratedEmulatedSystemClock extends EmulatedSystemClock {
 
-    private static final long AVERAGE_DELAY_MILLIS = 1000L;
-
     private final EmulatedSystemClock clock;
-    private long offset;
+    /** Correction added to the underlying clock, in milliseconds. */
+    private volatile long offset;
 
     @Override
     public long currentTimeMillis() {
-        return clock.currentTimeMillis() + offset + AVERAGE_DELAY_MILLIS;
-//        return ((clock.currentTimeMillis() + offset + AVERAGE_DELAY_MILLIS) - startTime) / 1000; // convert to seconds
+        return clock.currentTimeMillis() + offset;
+    }
+
+    /**
+     * Returns the time of the underlying clock, without the correction.
+     *
+     * @return the uncorrected time, in milliseconds
+     */
+    public long rawTimeMillis() {
+        return clock.currentTimeMillis();
+    }
+
+    /**
+     * Adds the given amount to the correction.
+     *
+     * @param delta change of the correction, in milliseconds
+     */
+    public synchronized void adjust(long delta) {
+        offset += delta;
     }
 }
@@ -0,0 +1,158 @@
+package hr.fer.ztel.rassus.dz2.stupidudp.network;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel that runs delayed tasks on a single thread. It is used
+ * by the simulated sockets to release delayed datagrams instead of starting
+ * a sleeping thread for every packet.
+ * <p>
+ * Scheduling is lock-free: tasks are put on a concurrent queue and moved to
+ * their wheel slot by the wheel thread on the next tick. Every tick the
+ * thread runs the tasks of the current slot that are due in this round, so
+ * the cost per tick depends only on the number of due tasks. Tasks run at
+ * most one tick late and must be short, because they delay each other.
+ */
+@Log4j2
+public class DelayScheduler {
+
+    /** Default number of wheel slots. */
+    private static final int DEFAULT_WHEEL_SIZE = 1024;
+    /** Default tick duration, in milliseconds. */
+    private static final long DEFAULT_TICK_MILLIS = 1;
+
+    private final List<Timeout>[] wheel;
+    private final int mask;
+    private final long tickNanos;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private final long startTime;
+    private volatile boolean running = true;
+
+    /**
+     * Creates a timer wheel and starts its daemon thread.
+     *
+     * @param wheelSize number of slots, rounded up to a power of two
+     * @param tickMillis duration of one tick, in milliseconds
+     * @param name name of the wheel thread
+     */
+    @SuppressWarnings("unchecked")
+    public DelayScheduler(int wheelSize, long tickMillis, String name) {
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.wheel = (List<Timeout>[]) new List<?>[size];
+        this.mask = size - 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+
+        this.startTime = System.nanoTime();
+        this.thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the scheduler shared by all simulated sockets in the JVM.
+     *
+     * @return the shared scheduler
+     */
+    public static DelayScheduler getShared() {
+        return SharedHolder.INSTANCE;
+    }
+
+    /**
+     * Runs the task after the given delay.
+     *
+     * @param task the task
+     * @param delayMillis delay in milliseconds
+     */
+    public void schedule(Runnable task, long delayMillis) {
+        pending.add(new Timeout(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis))));
+    }
+
+    /**
+     * Stops the wheel thread. Tasks that are not yet due are discarded.
+     */
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (running) {
+            // Wait for the end of the current tick
+            long deadline = startTime + (tick + 1) * tickNanos;
+            long now;
+            while ((now = System.nanoTime()) < deadline && running) {
+                LockSupport.parkNanos(deadline - now);
+            }
+
+            transferPending(tick);
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    /**
+     * Moves newly scheduled tasks to their slots. Tasks that are already due
+     * go to the current slot.
+     */
+    private void transferPending(long tick) {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            long dueTick = Math.max(tick, (timeout.deadline - startTime) / tickNanos);
+            timeout.rounds = (dueTick - tick) / wheel.length;
+            wheel[(int) (dueTick & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Runs the due tasks of the slot and keeps the ones due in later rounds.
+     */
+    private void expire(List<Timeout> slot) {
+        int kept = 0;
+        for (int i = 0, n = slot.size(); i < n; i++) {
+            Timeout timeout = slot.get(i);
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                slot.set(kept++, timeout);
+                continue;
+            }
+
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                log.error("Delayed task failed", e);
+            }
+        }
+        slot.subList(kept, slot.size()).clear();
+    }
+
+    private static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Lazily initialized holder of the shared scheduler.
+     */
+    private static class SharedHolder {
+        private static final DelayScheduler INSTANCE =
+                new DelayScheduler(DEFAULT_WHEEL_SIZE, DEFAULT_TICK_MILLIS, "DelayScheduler");
+    }
+}
@@ -5,6 +5,7 @@
  */
 package hr.fer.ztel.rassus.dz2.stupidudp.network;
 
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -12,21 +13,69 @@ import java.util.Random;
  * @author Aleksandar
  */
 public class EmulatedSystemClock {
-    
+
+    /** Seconds of the drift curve computed when the clock is first read. */
+    private static final int DRIFT_TABLE_SECONDS = 1024;
+
     protected long startTime;
     private double jitter; // jitter per second, percentage of deviation per 1 second
+    /** Drift factor <tt>(1 + jitter)^s</tt> of every whole second <tt>s</tt> since the start. */
+    private volatile double[] drift;
 
     public EmulatedSystemClock() {
+        this(0.2);
+    }
+
+    /**
+     * Creates a clock that drifts by a random fraction of up to
+     * <tt>maxJitter</tt> per second.
+     *
+     * @param maxJitter largest drift per second, as a fraction
+     */
+    public EmulatedSystemClock(double maxJitter) {
         startTime = System.currentTimeMillis();
         Random r = new Random();
-        jitter = (r.nextInt(400) - 200) / 1000d; // divide by 10 to get the interval between [-20, 20], and then divide by 100 to get percentage
+        jitter = (r.nextInt(400) - 200) / 200d * maxJitter; // interval between [-200, 200], scaled to the largest drift
     }
-    
+
     public long currentTimeMillis() {
         long current = System.currentTimeMillis();
         long diff = current - startTime;
-        double coef = diff / 1000;
-        return startTime + Math.round(diff * Math.pow((1+jitter), coef));
+        return startTime + Math.round(diff * driftFactor(diff / 1000));
     }
-    
+
+    /**
+     * Returns the drift factor after the given number of whole seconds from
+     * the precomputed curve, which is doubled whenever the clock outlives it.
+     */
+    private double driftFactor(long seconds) {
+        double[] table = drift;
+        if (table != null && seconds >= 0 && seconds < table.length) {
+            return table[(int) seconds];
+        }
+        if (seconds < 0 || seconds >= Integer.MAX_VALUE / 2) {
+            return Math.pow(1 + jitter, seconds);
+        }
+        return extendDrift((int) seconds)[(int) seconds];
+    }
+
+    private synchronized double[] extendDrift(int seconds) {
+        double[] table = drift;
+        int from = table == null ? 0 : table.length;
+        if (seconds < from) {
+            return table;
+        }
+
+        int length = Math.max(DRIFT_TABLE_SECONDS, from);
+        while (length <= seconds) {
+            length *= 2;
+        }
+        table = table == null ? new double[length] : Arrays.copyOf(table, length);
+        for (int s = from; s < length; s++) {
+            table[s] = Math.pow(1 + jitter, s);
+        }
+        drift = table;
+        return table;
+    }
+
 }
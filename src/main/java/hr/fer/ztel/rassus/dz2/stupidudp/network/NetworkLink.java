@@ -0,0 +1,19 @@
+package hr.fer.ztel.rassus.dz2.stupidudp.network;
+
+/**
+ * Model of a simulated one-way network link. The link decides whether a
+ * packet is lost and when it arrives, and delivers it by running the given
+ * task on the {@link DelayScheduler}. Implementations are thread-safe.
+ */
+public interface NetworkLink {
+
+    /**
+     * Transmits a packet over the link.
+     *
+     * @param length length of the packet, in bytes
+     * @param delivery task that delivers the packet once it arrives
+     * @return <tt>true</tt> if the packet will be delivered, <tt>false</tt> if it is lost
+     */
+    boolean transmit(int length, Runnable delivery);
+
+}
@@ -0,0 +1,93 @@
+package hr.fer.ztel.rassus.dz2.stupidudp.network;
+
+import hr.fer.ztel.rassus.dz2.util.Settings;
+
+import java.net.DatagramSocket;
+import java.net.SocketException;
+
+/**
+ * Creates simulated links and sockets for nodes. The loss rate and average
+ * delay of a node come from the network configuration; the link model and
+ * its remaining parameters are selected with system properties:
+ * <ul>
+ *     <li>{@link Settings#LINK_MODEL} - <tt>UNIFORM</tt> (default) or <tt>QUEUED</tt></li>
+ *     <li>{@link Settings#LINK_JITTER} - jitter of the queued model, in milliseconds</li>
+ *     <li>{@link Settings#LINK_SENDING_DELAY} - sending delay of the queued model, in milliseconds</li>
+ *     <li>{@link Settings#LINK_BANDWIDTH} - bandwidth of the queued model, in bytes per second</li>
+ *     <li>{@link Settings#LINK_REORDER_RATE} - reordering probability of the queued model</li>
+ *     <li>{@link Settings#LINK_MAX_QUEUE_DELAY} - maximum queueing delay of the queued model, in milliseconds</li>
+ * </ul>
+ */
+public class NetworkLinks {
+
+    /**
+     * Available link models.
+     */
+    public enum Model {
+        /** Loss and uniformly distributed delay, see {@link UniformDelayLink}. */
+        UNIFORM,
+        /** Serialization queue, jitter, loss and reordering, see {@link QueuedLink}. */
+        QUEUED
+    }
+
+    private static final Model MODEL = Settings.getEnum(Settings.LINK_MODEL, Model.UNIFORM);
+
+    /** Disable instantiation. */
+    private NetworkLinks() {}
+
+    /**
+     * Creates a link with the configured model.
+     *
+     * @param lossRate packet loss ratio
+     * @param averageDelay average delay in milliseconds
+     * @return a new link
+     */
+    public static NetworkLink createLink(double lossRate, int averageDelay) {
+        if (MODEL == Model.UNIFORM) {
+            return new UniformDelayLink(lossRate, averageDelay);
+        }
+
+        return QueuedLink.builder()
+                .lossRate(lossRate)
+                .averageDelay(averageDelay)
+                .jitter(Settings.getInt(Settings.LINK_JITTER, averageDelay / 2))
+                .sendingDelay(Settings.getInt(Settings.LINK_SENDING_DELAY, 1))
+                .bandwidth(Settings.getLong(Settings.LINK_BANDWIDTH, 0))
+                .reorderRate(Settings.getDouble(Settings.LINK_REORDER_RATE, 0))
+                .maxQueueDelay(Settings.getInt(Settings.LINK_MAX_QUEUE_DELAY, 0))
+                .build();
+    }
+
+    /**
+     * Opens a socket bound to any available port that sends over a link with
+     * the configured model (client side).
+     *
+     * @param lossRate packet loss ratio
+     * @param averageDelay average delay in milliseconds
+     * @return a new socket
+     * @throws SocketException if the socket could not be opened
+     */
+    public static DatagramSocket openSocket(double lossRate, int averageDelay) throws SocketException {
+        if (MODEL == Model.UNIFORM) {
+            return new SimpleSimulatedDatagramSocket(lossRate, averageDelay);
+        }
+        return new SimulatedDatagramSocket(createLink(lossRate, averageDelay), 4 * averageDelay);
+    }
+
+    /**
+     * Opens a socket bound to the given port that sends over a link with the
+     * configured model (server side).
+     *
+     * @param port local port
+     * @param lossRate packet loss ratio
+     * @param averageDelay average delay in milliseconds
+     * @return a new socket
+     * @throws SocketException if the socket could not be opened or bound
+     */
+    public static DatagramSocket openSocket(int port, double lossRate, int averageDelay) throws SocketException {
+        if (MODEL == Model.UNIFORM) {
+            return new SimpleSimulatedDatagramSocket(port, lossRate, averageDelay);
+        }
+        return new SimulatedDatagramSocket(port, createLink(lossRate, averageDelay));
+    }
+}
@@ -0,0 +1,108 @@
+package hr.fer.ztel.rassus.dz2.stupidudp.network;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Link with a serialization queue. Packets leave the sender one at a time,
+ * each occupying the link for its sending delay, either fixed or given by
+ * the packet length and bandwidth. A packet sent while the link is busy
+ * waits in the queue, and is dropped if it would wait longer than the
+ * maximum queue delay. After leaving, packets travel for the propagation
+ * delay plus uniformly distributed jitter. Packets are lost independently
+ * with the loss rate, before they enter the queue.
+ * <p>
+ * Packets arrive in the order they were sent, unless a packet is picked for
+ * reordering with the reordering probability, in which case it arrives after
+ * its own jittered delay and may overtake or be overtaken by others.
+ * <p>
+ * The queue is modelled by the time at which the link becomes free, and the
+ * ordering by the latest arrival time, both updated with compare-and-set, so
+ * the send path is lock-free.
+ */
+@Getter
+public class QueuedLink implements NetworkLink {
+
+    /** Packet loss ratio. */
+    private final double lossRate;
+    /** Average delay of a packet on an idle link, including sending delay, in milliseconds. */
+    private final int averageDelay;
+    /** Maximum deviation of the delay from the average, in milliseconds. */
+    private final int jitter;
+    /** Time a packet occupies the link when bandwidth is not set, in milliseconds. */
+    private final int sendingDelay;
+    /** Bandwidth of the link in bytes per second, 0 to use the fixed sending delay. */
+    private final long bandwidth;
+    /** Probability that a packet is exempt from in-order delivery. */
+    private final double reorderRate;
+    /** Maximum time a packet waits in the queue before it is dropped, 0 for unlimited. */
+    private final int maxQueueDelay;
+
+    /** Time at which the last queued packet has left the sender, in nanoseconds. */
+    private final AtomicLong linkFreeAt = new AtomicLong(Long.MIN_VALUE);
+    /** Latest arrival time of an in-order packet, in nanoseconds. */
+    private final AtomicLong lastArrival = new AtomicLong(Long.MIN_VALUE);
+
+    @Builder
+    public QueuedLink(double lossRate, int averageDelay, int jitter, int sendingDelay,
+                      long bandwidth, double reorderRate, int maxQueueDelay) {
+        if (averageDelay < 0 || jitter < 0 || sendingDelay < 0 || bandwidth < 0 || maxQueueDelay < 0) {
+            throw new IllegalArgumentException("Delays and bandwidth must not be negative");
+        }
+
+        this.lossRate = lossRate;
+        this.averageDelay = averageDelay;
+        this.jitter = jitter;
+        this.sendingDelay = sendingDelay;
+        this.bandwidth = bandwidth;
+        this.reorderRate = reorderRate;
+        this.maxQueueDelay = maxQueueDelay;
+    }
+
+    @Override
+    public boolean transmit(int length, Runnable delivery) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < lossRate) {
+            return false;
+        }
+
+        long now = System.nanoTime();
+        long serialization = serializationNanos(length);
+
+        // Take the next free slot of the link, or drop if the queue is too long
+        long departure;
+        while (true) {
+            long free = linkFreeAt.get();
+            long start = Math.max(now, free);
+            if (maxQueueDelay > 0 && start - now > TimeUnit.MILLISECONDS.toNanos(maxQueueDelay)) {
+                return false;
+            }
+
+            departure = start + serialization;
+            if (linkFreeAt.compareAndSet(free, departure)) {
+                break;
+            }
+        }
+
+        long propagation = Math.max(0, TimeUnit.MILLISECONDS.toNanos(averageDelay) - serialization);
+        long deviation = (long) (2 * (random.nextDouble() - 0.5) * TimeUnit.MILLISECONDS.toNanos(jitter));
+        long arrival = departure + Math.max(0, propagation + deviation);
+        if (reorderRate <= 0 || random.nextDouble() >= reorderRate) {
+            arrival = lastArrival.accumulateAndGet(arrival, Math::max);
+        }
+
+        DelayScheduler.getShared().schedule(delivery, TimeUnit.NANOSECONDS.toMillis(arrival - now));
+        return true;
+    }
+
+    private long serializationNanos(int length) {
+        if (bandwidth > 0) {
+            return length * TimeUnit.SECONDS.toNanos(1) / bandwidth;
+        }
+        return TimeUnit.MILLISECONDS.toNanos(sendingDelay);
+    }
+}
@@ -45,31 +45,31 @@ public class SimpleSimulatedDatagramSocket extends DatagramSocket {
     public void send(DatagramPacket packet) throws IOException {
         if (random.nextDouble() >= lossRate) {
             // Delay is uniformly distributed between 0 and 2*averageDelay
-            new Thread(new OutgoingDatagramPacket(packet, (long) (2 * averageDelay * random.nextDouble()))).start();
+            DelayScheduler.getShared().schedule(new OutgoingDatagramPacket(packet),
+                    (long) (2 * averageDelay * random.nextDouble()));
         }
     }
 
     /**
-     * Inner class for internal use.
+     * Inner class for internal use, run by the {@link DelayScheduler}
+     * once the simulated network delay has passed.
      */
     private class OutgoingDatagramPacket implements Runnable {
 
         private final DatagramPacket packet;
-        private final long time;
 
-        private OutgoingDatagramPacket(DatagramPacket packet, long time) {
+        private OutgoingDatagramPacket(DatagramPacket packet) {
             this.packet = packet;
-            this.time = time;
         }
 
         @Override
         public void run() {
+            if (isClosed()) {
+                // Packet was still on the simulated link when the socket closed
+                return;
+            }
             try {
-                // Simulate network delay
-                Thread.sleep(time);
                 SimpleSimulatedDatagramSocket.super.send(packet);
-            } catch (InterruptedException e) {
-                Thread.interrupted();
             } catch (IOException ex) {
                 Logger.getLogger(SimulatedDatagramSocket.class.getName()).log(Level.SEVERE, null, ex);
             }
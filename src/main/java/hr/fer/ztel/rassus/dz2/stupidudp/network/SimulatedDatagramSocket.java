@@ -9,7 +9,6 @@ import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.SocketException;
-import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,21 +31,9 @@ import java.util.logging.Logger;
 public class SimulatedDatagramSocket extends DatagramSocket {
 
     /**
-     * Packet loss ratio of the simulated network.
+     * Model of the simulated network.
      */
-    private double lossRate;
-    /**
-     * Various parameters of the simulated network. All these parameters
-     * are in milliseconds.
-     */
-    private int averageDelay;
-    private int jitter;
-    private int sendingDelay;
-    /**
-     * Some attributes for internal use.
-     */
-    private Random random;
-    private int cumulatedSendingDelay;
+    private final NetworkLink link;
 
     /**
      * Constructs a datagram socket for sending datagram packets over a
@@ -79,22 +66,52 @@ public class SimulatedDatagramSocket extends DatagramSocket {
      * <code>averageDelay</code> is less or equal to zero.
      */
     public SimulatedDatagramSocket(double lossRate, int sendingDelay, int averageDelay, int jitter) throws SocketException, IllegalArgumentException {
-        random = new Random();
-
         if (sendingDelay <= 0 || averageDelay <= 0) {
             throw new IllegalArgumentException("Delays should be greater than zero");
         }
 
-        this.lossRate = lossRate;
-        this.sendingDelay = sendingDelay;
-        this.cumulatedSendingDelay = -sendingDelay;
-        this.averageDelay = averageDelay;
-        this.jitter = jitter;
+        this.link = QueuedLink.builder()
+                .lossRate(lossRate)
+                .sendingDelay(sendingDelay)
+                .averageDelay(averageDelay)
+                .jitter(jitter)
+                .build();
 
         //set time to wait for answer
         super.setSoTimeout(2 * (jitter + averageDelay));
     }
 
+    /**
+     * Constructs a datagram socket for sending datagram packets over the
+     * given simulated link and binds it to any available port on the
+     * local host machine.
+     *
+     * @param link model of the simulated network
+     * @param soTimeout time to wait for an answer in milliseconds, 0 for infinite
+     *
+     * @throws  SocketException  if the socket could not be opened.
+     */
+    public SimulatedDatagramSocket(NetworkLink link, int soTimeout) throws SocketException {
+        this.link = link;
+        super.setSoTimeout(soTimeout);
+    }
+
+    /**
+     * Constructs a datagram socket for sending datagram packets over the
+     * given simulated link and binds it to the specified port on the
+     * local host machine, for use on the server side.
+     *
+     * @param port local port to use
+     * @param link model of the simulated network
+     *
+     * @throws  SocketException  if the socket could not be opened,
+     *               or the socket could not bind to the specified local port.
+     */
+    public SimulatedDatagramSocket(int port, NetworkLink link) throws SocketException {
+        super(port);
+        this.link = link;
+    }
+
     /**
      * Sends a datagram packet from this socket over the simulated network.
      * The <code>DatagramPacket</code> includes information indicating the
@@ -132,38 +149,30 @@ public class SimulatedDatagramSocket extends DatagramSocket {
      */
     @Override
     public void send(DatagramPacket packet) throws IOException {
-        if (random.nextDouble() >= lossRate) {
-            // Jitter is uniformly distributed
-            cumulatedSendingDelay += sendingDelay;
-            new Thread(new OutgoingDatagramPacket(packet, averageDelay - sendingDelay + cumulatedSendingDelay + (long) (2 * (random.nextDouble() - 0.5) * jitter))).start();
-        }
+        // Loss, sending delay, queueing and jitter are all simulated by the link
+        link.transmit(packet.getLength(), new OutgoingDatagramPacket(packet));
     }
 
     /**
-     * Inner class for internal use.
+     * Inner class for internal use, run by the {@link DelayScheduler}
+     * once the packet has arrived over the simulated link.
      */
     private class OutgoingDatagramPacket implements Runnable {
 
         private final DatagramPacket packet;
-        private final long time;
 
-        private OutgoingDatagramPacket(DatagramPacket packet, long time) {
+        private OutgoingDatagramPacket(DatagramPacket packet) {
             this.packet = packet;
-            this.time = time;
         }
 
         @Override
         public void run() {
+            if (isClosed()) {
+                // Packet was still on the simulated link when the socket closed
+                return;
+            }
             try {
-                // Simulate sending delay
-                Thread.sleep(sendingDelay);
-                cumulatedSendingDelay -= sendingDelay;
-
-                // Simulate network delay
-                Thread.sleep(time);
                 SimulatedDatagramSocket.super.send(packet);
-            } catch (InterruptedException e) {
-                Thread.interrupted();
             } catch (IOException ex) {
                 Logger.getLogger(SimulatedDatagramSocket.class.getName()).log(Level.SEVERE, null, ex);
             }
@@ -0,0 +1,31 @@
+package hr.fer.ztel.rassus.dz2.stupidudp.network;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Link with independent packet loss and a delay uniformly distributed
+ * between 0 and twice the average delay, the same model as
+ * {@link SimpleSimulatedDatagramSocket}.
+ */
+public class UniformDelayLink implements NetworkLink {
+
+    private final double lossRate;
+    private final int averageDelay;
+
+    public UniformDelayLink(double lossRate, int averageDelay) {
+        this.lossRate = lossRate;
+        this.averageDelay = averageDelay;
+    }
+
+    @Override
+    public boolean transmit(int length, Runnable delivery) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < lossRate) {
+            return false;
+        }
+
+        // Delay is uniformly distributed between 0 and 2*averageDelay
+        DelayScheduler.getShared().schedule(delivery, (long) (2 * averageDelay * random.nextDouble()));
+        return true;
+    }
+}
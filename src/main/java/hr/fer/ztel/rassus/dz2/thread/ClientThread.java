@@ -1,128 +1,192 @@
 package hr.fer.ztel.rassus.dz2.thread;
 
-import com.google.gson.Gson;
 import hr.fer.ztel.rassus.dz2.loader.Loaders;
+import hr.fer.ztel.rassus.dz2.loader.MeasurementLoader;
+import hr.fer.ztel.rassus.dz2.metrics.NodeMetrics.Counter;
 import hr.fer.ztel.rassus.dz2.model.Measurement;
-import hr.fer.ztel.rassus.dz2.model.MeasurementPacket;
-import hr.fer.ztel.rassus.dz2.stupidudp.network.SimpleSimulatedDatagramSocket;
-import hr.fer.ztel.rassus.dz2.timestamp.ScalarTimestamp;
-import hr.fer.ztel.rassus.dz2.timestamp.VectorTimestamp;
-import hr.fer.ztel.rassus.dz2.util.Utility;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+import hr.fer.ztel.rassus.dz2.transport.Endpoint;
+import hr.fer.ztel.rassus.dz2.transport.GossipSender;
+import hr.fer.ztel.rassus.dz2.transport.MeasurementSender;
+import hr.fer.ztel.rassus.dz2.transport.ReliableSender;
+import hr.fer.ztel.rassus.dz2.transport.Transport;
+import hr.fer.ztel.rassus.dz2.util.Settings;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import lombok.extern.log4j.Log4j2;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.SocketAddress;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
-import static hr.fer.ztel.rassus.dz2.util.Utility.RECEIVE_CONFIRMATION;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Log4j2
 @ToString
 public class ClientThread extends Thread {
 
-    /** Interval between two automatic measurements, in milliseconds. */
-    private static final long AUTO_MEASURE_SLEEP_MILLIS = 1000;
-    private static final int BUFFER_SIZE = 256;
+    /**
+     * Ways in which the client thread sends measurements to other nodes.
+     */
+    public enum SendMode {
+        /** Every measurement is sent to every neighbour and confirmed by it. */
+        DIRECT,
+        /**
+         * Every measurement is sent to a few random neighbours which forward
+         * it further, see {@link hr.fer.ztel.rassus.dz2.transport.Gossip}.
+         */
+        GOSSIP
+    }
+
+    /** Interval between two scheduled measurements, in nanoseconds. */
+    private static final long MEASURE_PERIOD_NANOS = periodNanos(Settings.getDouble(Settings.CLIENT_MEASURE_RATE, 1));
     /** Maximum number of attempts when retrying a send. */
     private static final int RETRY_LOGIC_ATTEMPTS = 3;
-
-    private final ExecutorService executorService;
+    /** Maximum number of unconfirmed packets per neighbour. */
+    private static final int WINDOW_SIZE = Settings.getInt(Settings.CLIENT_WINDOW_SIZE, 32);
+    /** Maximum number of packets per neighbour waiting for the window to slide. */
+    private static final int MAX_QUEUED = 1024;
+    /** Maximum size of a packet with a batch of measurements, fits into an Ethernet frame. */
+    private static final int MAX_PACKET_SIZE = Settings.getInt(Settings.CLIENT_MAX_PACKET_SIZE, 1400);
+    /** Maximum time a measurement waits for a batch to fill up, in milliseconds. */
+    private static final long MAX_BATCH_DELAY = Settings.getLong(Settings.CLIENT_MAX_BATCH_DELAY, 50);
+    /** Maximum time to wait for a measurement being taken when the client stops, in milliseconds. */
+    private static final long STOP_TIMEOUT_MILLIS = 1000;
 
     private final Node node;
+    private final Transport transport;
     @Getter private final double lossRate;
     @Getter private final int averageDelay;
     @Getter private final List<SocketAddress> neighbourNodes;
 
-    public ClientThread(Node node, double lossRate, int averageDelay, List<SocketAddress> neighbourNodes) {
-        super("ClientThread");
+    public ClientThread(Node node, Transport transport, double lossRate, int averageDelay, List<SocketAddress> neighbourNodes) {
+        super("ClientThread-" + node.getName());
         this.node = node;
+        this.transport = transport;
         this.lossRate = lossRate;
         this.averageDelay = averageDelay;
         this.neighbourNodes = neighbourNodes;
-        this.executorService = Executors.newFixedThreadPool(3 * neighbourNodes.size());
     }
 
     @Override
     public void run() {
-        try (DatagramSocket socket = new SimpleSimulatedDatagramSocket(lossRate, averageDelay)) {
-            while (!Thread.currentThread().isInterrupted()) {
-                // Start a measurement and sleep until the new measurement cycle
-                measure(socket);
-                try { Thread.sleep(AUTO_MEASURE_SLEEP_MILLIS); }
-                catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                r -> new Thread(r, "MeasureTimer-" + node.getName()));
+
+        try (MeasurementSender sender = createSender(transport.open(lossRate, averageDelay))) {
+            Sampler sampler = new Sampler(sender, System.nanoTime());
+            scheduler.scheduleAtFixedRate(sampler, 0, MEASURE_PERIOD_NANOS, TimeUnit.NANOSECONDS);
+
+            // Measurements are taken by the scheduler until the node interrupts this thread
+            try {
+                scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // The sender is closed only after the last measurement has been sent with it
+                stopSampling(scheduler);
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
-            executorService.shutdown();
+            scheduler.shutdownNow();
         }
     }
 
-    public void measure(DatagramSocket socket) {
+    /**
+     * Stops the scheduler and waits for a measurement that is being taken to
+     * finish. The interrupt status of this thread is kept.
+     */
+    private void stopSampling(ScheduledExecutorService scheduler) {
+        scheduler.shutdownNow();
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (!scheduler.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.warn("Measurement timer of {} did not stop in time", node.getName());
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private MeasurementSender createSender(Endpoint endpoint) {
+        if (node.getGossip() != null) {
+            log.info("Gossiping measurements with fanout {} over {} rounds",
+                    node.getGossip().getFanout(), node.getGossip().getRounds());
+            return new GossipSender(node.getNodeIndex(), endpoint, node.getGossip(),
+                    MAX_PACKET_SIZE, MAX_BATCH_DELAY, node.getMetrics());
+        }
+        return new ReliableSender(node.getNodeIndex(), endpoint,
+                node.getMembership(), WINDOW_SIZE, RETRY_LOGIC_ATTEMPTS, MAX_QUEUED,
+                MAX_PACKET_SIZE, MAX_BATCH_DELAY, node.getMetrics());
+    }
+
+    /**
+     * Takes the measurement of the given tick, stores it locally and sends
+     * it to the neighbouring nodes. The measurement is chosen by the tick
+     * alone, so the same ticks replay the same measurements at any rate.
+     *
+     * @param sender sender of measurements to the neighbouring nodes
+     * @param tick number of measurement periods since the client started
+     */
+    public void measure(MeasurementSender sender, long tick) {
         // Generate measurement
-        int secondsActive = Math.toIntExact((System.currentTimeMillis() - node.getStartTime()) / 1000);
-        Measurement measurement = Loaders.getMeasurementLoader().getMeasurement(secondsActive % 100);
+        MeasurementLoader loader = Loaders.getMeasurementLoader();
+        Measurement measurement = loader.getMeasurement((int) (tick % loader.size()));
         log.debug("Generated measurement: {}", measurement);
 
         // Store measurement locally
-        node.storeMeasurement(measurement);
-        ScalarTimestamp scalar = node.getLastScalarTimestamp();
-        VectorTimestamp vector = node.getLastVectorTimestamp();
+        TimestampedMeasurement stored = node.storeMeasurement(measurement);
 
-        // Send to all other nodes in network
-        for (SocketAddress nodeAddress : neighbourNodes) {
-            executorService.submit(new SendJob(node.getName(), socket, nodeAddress, measurement, scalar, vector));
-        }
+        // Send to other nodes in network
+        sender.send(stored);
     }
 
-    @RequiredArgsConstructor
-    private static class SendJob implements Runnable {
-
-        /** ID of the packet being sent. This prevents duplicates over UDP. */
-        private static long packetId = 0L;
+    private static long periodNanos(double rate) {
+        return rate > 0 ? Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / rate)) : TimeUnit.SECONDS.toNanos(1);
+    }
 
-        private final String nodeName;
-        private final DatagramSocket socket;
-        private final SocketAddress nodeAddress;
-        private final Measurement measurement;
-        private final ScalarTimestamp scalar;
-        private final VectorTimestamp vector;
+    /**
+     * Task run by the scheduler once per measurement period. Ticks are
+     * counted rather than read from the clock, since a fixed-rate schedule
+     * runs exactly one task per period. A tick is skipped instead of
+     * measured when the node can not keep up:
+     * <ul>
+     * <li>the task runs later than the next tick is due, which happens when
+     *     measuring takes longer than a period and the scheduler catches up
+     *     with a burst of late ticks, or</li>
+     * <li>packets to all neighbours are piling up behind their windows.</li>
+     * </ul>
+     */
+    @RequiredArgsConstructor
+    private class Sampler implements Runnable {
+        private final MeasurementSender sender;
+        /** Time of the first tick, in nanoseconds. */
+        private final long startNanos;
+        private long tick;
 
         @Override
         public void run() {
-            log.info("Sending packet to {}", nodeAddress);
-
-            MeasurementPacket measurementPacket = new MeasurementPacket(
-                    nodeName+"-"+packetId, measurement, scalar, vector);
-            packetId++;
-
-            // Create a JSON object and convert to bytes
-            Gson gson = new Gson();
-            String jsonText = gson.toJson(measurementPacket);
-            byte[] bytes = jsonText.getBytes();
-
-            // Send measurement to socket
-            Utility.retry(RETRY_LOGIC_ATTEMPTS, () -> {
-                DatagramPacket packet = new DatagramPacket(bytes, bytes.length, nodeAddress);
-                socket.send(packet);
-                return true;
-            });
-
-            // Await confirmation
-            Utility.retry(RETRY_LOGIC_ATTEMPTS, () -> {
-                DatagramPacket rcvPacket = new DatagramPacket(new byte[BUFFER_SIZE], BUFFER_SIZE);
-                socket.receive(rcvPacket);
-
-                String rcvString = new String(rcvPacket.getData(), rcvPacket.getOffset(), rcvPacket.getLength());
-                return rcvString.equals(RECEIVE_CONFIRMATION);
-            });
+            long current = tick++;
+            long lateNanos = System.nanoTime() - startNanos - current * MEASURE_PERIOD_NANOS;
+            if (lateNanos > MEASURE_PERIOD_NANOS || sender.isBackedUp()) {
+                node.getMetrics().increment(Counter.MEASUREMENTS_SKIPPED);
+                log.debug("Skipping measurement {}, late by {} ns", current, lateNanos);
+                return;
+            }
+
+            try {
+                measure(sender, current);
+            } catch (RuntimeException e) {
+                // An exception would cancel all further ticks
+                log.error("Unable to take measurement {}", current, e);
+            }
         }
     }
 }
@@ -1,30 +1,64 @@
 package hr.fer.ztel.rassus.dz2.thread;
 
+import hr.fer.ztel.rassus.dz2.aggregate.WindowSummary;
+import hr.fer.ztel.rassus.dz2.aggregate.WindowedAggregator;
+import hr.fer.ztel.rassus.dz2.ingest.StripedBuffer;
+import hr.fer.ztel.rassus.dz2.membership.ClockSynchronizer;
+import hr.fer.ztel.rassus.dz2.membership.Membership;
+import hr.fer.ztel.rassus.dz2.metrics.NodeMetrics;
+import hr.fer.ztel.rassus.dz2.metrics.NodeMetrics.Counter;
+import hr.fer.ztel.rassus.dz2.model.LoggedMeasurement;
 import hr.fer.ztel.rassus.dz2.model.Measurement;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+import hr.fer.ztel.rassus.dz2.storage.MeasurementLog;
 import hr.fer.ztel.rassus.dz2.stupidudp.network.DecoratedEmulatedSystemClock;
 import hr.fer.ztel.rassus.dz2.stupidudp.network.EmulatedSystemClock;
+import hr.fer.ztel.rassus.dz2.timestamp.CausalSorter;
 import hr.fer.ztel.rassus.dz2.timestamp.ScalarTimestamp;
+import hr.fer.ztel.rassus.dz2.timestamp.VectorClock;
 import hr.fer.ztel.rassus.dz2.timestamp.VectorTimestamp;
+import hr.fer.ztel.rassus.dz2.transport.Gossip;
+import hr.fer.ztel.rassus.dz2.transport.Transport;
+import hr.fer.ztel.rassus.dz2.transport.UdpTransport;
+import hr.fer.ztel.rassus.dz2.util.Settings;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.SocketAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 @Log4j2
 public class Node {
 
     /** Interval between two sorts of measurements, in milliseconds. */
     private static final long SORT_INTERVAL_MILLIS = 5000;
+    /** Largest measurement value told apart by window quantiles. */
+    private static final long MAX_AGGREGATED_VALUE = 1 << 20;
+    /** Interval between two dumps of metrics, in milliseconds. */
+    private static final long METRICS_INTERVAL_MILLIS = Settings.getLong(Settings.METRICS_INTERVAL, 10_000);
+    /** Directory with a measurement log per node, named after it; empty, the default, if measurements are not logged. */
+    private static final String LOG_DIR = Settings.getString(Settings.LOG_DIR, "");
+    /** Capacity of a segment of the measurement log, in bytes. */
+    private static final int LOG_SEGMENT_SIZE = Settings.getInt(Settings.LOG_SEGMENT_SIZE, 16 << 20);
+    /** Interval between two commits to the measurement log, in milliseconds. */
+    private static final long LOG_COMMIT_INTERVAL_MILLIS = Settings.getLong(Settings.LOG_COMMIT_INTERVAL, 100);
+    /** Interval between two heartbeats, in milliseconds. */
+    private static final long HEARTBEAT_INTERVAL_MILLIS = Settings.getLong(Settings.MEMBERSHIP_HEARTBEAT_INTERVAL, 1000);
+    /** Phi at which a peer is suspected to have failed. */
+    private static final double PHI_THRESHOLD = Settings.getDouble(Settings.MEMBERSHIP_PHI_THRESHOLD, 8);
+    /** Largest drift of the emulated clock per second, as a fraction. */
+    private static final double CLOCK_JITTER = Settings.getDouble(Settings.CLOCK_JITTER, 0.2);
 
     @Getter private long startTime = System.currentTimeMillis();
     @Getter private boolean started = false;
@@ -32,38 +66,90 @@ public class Node {
     @Getter private final String name;
     @Getter private final int port;
     @Getter private final int nodeIndex;
+    /** Number of nodes when this node was created, including this one. */
     @Getter private final int totalNodes;
 
+    /** Other nodes in the network and whether they are alive. */
+    @Getter private final Membership membership;
+
+    /** Parameters of gossip, <tt>null</tt> if measurements are sent to every neighbour. */
+    @Getter private final Gossip gossip;
+
     @Getter private final DecoratedEmulatedSystemClock clock;
+    /** Corrects the clock towards the clocks of the other nodes, with heartbeats. */
+    @Getter private final ClockSynchronizer clockSynchronizer;
+    @Getter private final NodeMetrics metrics;
 
+    /** Local vector clock, also the lock that guards both clocks. */
+    private final VectorClock vectorClock;
     @Getter private volatile VectorTimestamp lastVectorTimestamp;
     @Getter private volatile ScalarTimestamp lastScalarTimestamp;
 
     private final AtomicInteger eventCount = new AtomicInteger();
-    private final List<Measurement> measurements = new CopyOnWriteArrayList<>();
-    private final Map<ScalarTimestamp, Measurement> scalarTimestampMap = new ConcurrentHashMap<>();
-    private final Map<VectorTimestamp, Measurement> vectorTimestampMap = new ConcurrentHashMap<>();
+    /** Running aggregates of CO measurements in the current window. */
+    private final WindowedAggregator coAggregator = new WindowedAggregator(MAX_AGGREGATED_VALUE);
+    /** Measurements of the current window in causal order, kept only for debug listings. */
+    private final CausalSorter<TimestampedMeasurement> measurements = new CausalSorter<>();
+    /** Measurements stored since the last commit to the log. */
+    private final StripedBuffer<LoggedMeasurement> uncommitted = new StripedBuffer<>();
+    /** Log of all stored measurements, <tt>null</tt> if the node is not running or does not log. */
+    private volatile MeasurementLog measurementLog;
 
     private final ServerThread serverThread;
     private final ClientThread clientThread;
     private final ScheduledExecutorService executorService;
 
     public Node(String name, int port, double lossRate, int averageDelay, int nodeIndex, List<SocketAddress> neighbourNodes) {
+        this(name, port, lossRate, averageDelay, nodeIndex, neighbourNodes, new UdpTransport());
+    }
+
+    /**
+     * Creates a node that communicates with its neighbours over the given
+     * transport.
+     *
+     * @param name name of the node
+     * @param port port on which the node receives measurements
+     * @param lossRate packet loss ratio of the links of this node
+     * @param averageDelay average delay of the links of this node, in milliseconds
+     * @param nodeIndex index of the node in vector timestamps
+     * @param neighbourNodes addresses of all other nodes on the transport when the node is created
+     * @param transport network connecting the nodes
+     */
+    public Node(String name, int port, double lossRate, int averageDelay, int nodeIndex,
+                List<SocketAddress> neighbourNodes, Transport transport) {
         this.name = name;
         this.port = port;
         this.nodeIndex = nodeIndex;
         this.totalNodes = neighbourNodes.size() + 1;
+        this.clock = new DecoratedEmulatedSystemClock(new EmulatedSystemClock(CLOCK_JITTER));
+        this.membership = new Membership(nodeIndex, neighbourNodes, clock, HEARTBEAT_INTERVAL_MILLIS, PHI_THRESHOLD);
+        this.clockSynchronizer = new ClockSynchronizer(membership, clock);
+        this.gossip = createGossip(membership);
 
-        this.clock = new DecoratedEmulatedSystemClock(new EmulatedSystemClock());
+        this.metrics = new NodeMetrics(name);
 
-        this.lastVectorTimestamp = new VectorTimestamp(new int[totalNodes]);
+        this.vectorClock = new VectorClock(totalNodes);
+        this.lastVectorTimestamp = vectorClock.snapshot();
         this.lastScalarTimestamp = new ScalarTimestamp(clock.currentTimeMillis());
 
-        this.serverThread = new ServerThread(this, port, lossRate, averageDelay);
-        this.clientThread = new ClientThread(this, lossRate, averageDelay, neighbourNodes);
+        this.serverThread = new ServerThread(this, transport, port, lossRate, averageDelay);
+        this.clientThread = new ClientThread(this, transport, lossRate, averageDelay, neighbourNodes);
         this.executorService = Executors.newSingleThreadScheduledExecutor();
     }
 
+    /**
+     * Creates gossip parameters if measurements are gossiped, with the
+     * fanout and rounds from the settings or scaled to the network size.
+     */
+    private static Gossip createGossip(Membership membership) {
+        if (Settings.getEnum(Settings.CLIENT_SEND_MODE, ClientThread.SendMode.DIRECT) != ClientThread.SendMode.GOSSIP) {
+            return null;
+        }
+        return new Gossip(membership,
+                Settings.getInt(Settings.GOSSIP_FANOUT, 0),
+                Settings.getInt(Settings.GOSSIP_ROUNDS, 0));
+    }
+
     public void startNode() {
         if (started) {
             log.info("Node {} was already started. Cannot reuse resources.", name);
@@ -71,6 +157,13 @@ public class Node {
         }
 
         log.info("Starting node {}", name);
+        if (!LOG_DIR.isEmpty()) {
+            try {
+                measurementLog = MeasurementLog.open(Paths.get(LOG_DIR, name), LOG_SEGMENT_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to open measurement log of node " + name, e);
+            }
+        }
         started = true;
         startTime = System.currentTimeMillis();
 
@@ -79,6 +172,17 @@ public class Node {
         clientThread.start();
         executorService.scheduleWithFixedDelay(new SortJob(),
                 SORT_INTERVAL_MILLIS, SORT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        if (measurementLog != null) {
+            executorService.scheduleWithFixedDelay(this::commitLog,
+                    LOG_COMMIT_INTERVAL_MILLIS, LOG_COMMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        metrics.register();
+        if (METRICS_INTERVAL_MILLIS > 0) {
+            executorService.scheduleWithFixedDelay(() -> log.info("Metrics: {}", metrics.snapshot()),
+                    METRICS_INTERVAL_MILLIS, METRICS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
     }
 
     public void shutdown() {
@@ -90,64 +194,200 @@ public class Node {
 
         clientThread.interrupt();
         serverThread.interrupt();
+        // Runs after a commit that may be in progress, before the executor terminates
+        executorService.execute(this::closeLog);
         executorService.shutdown();
+        metrics.unregister();
     }
 
     public int getEventCount() {
         return eventCount.get();
     }
 
-    public void storeMeasurement(Measurement measurement) {
-        storeMeasurement(measurement, lastScalarTimestamp, lastVectorTimestamp);
+    public TimestampedMeasurement storeMeasurement(Measurement measurement) {
+        return storeMeasurement(nodeIndex, measurement, lastScalarTimestamp, lastVectorTimestamp);
     }
 
-    public synchronized void storeMeasurement(Measurement measurement, ScalarTimestamp scalar, VectorTimestamp vector) {
-        recordEvent();
+    /**
+     * Records the event of storing the measurement, updates both clocks of
+     * this node and adds the measurement with the new timestamps to the
+     * current window. Updating the clocks is a short critical section; adding
+     * to the window and to the measurement log is lock-free.
+     *
+     * @param source index of the node that took the measurement
+     * @param measurement the measurement
+     * @param scalar scalar timestamp of the event that produced the measurement
+     * @param vector vector timestamp of the event that produced the measurement
+     * @return the measurement with the timestamps of this node
+     */
+    public TimestampedMeasurement storeMeasurement(int source, Measurement measurement,
+                                                   ScalarTimestamp scalar, VectorTimestamp vector) {
+        TimestampedMeasurement stored;
+        long lockedAt;
+        synchronized (vectorClock) {
+            lockedAt = System.nanoTime();
+            recordEvent();
+
+            // Never earlier than the event that produced the measurement, without moving the synchronized clock
+            long now = clock.currentTimeMillis();
+            if (scalar.getValue() > now) {
+                log.debug("Scalar value {} is ahead of the clock by {} ms", scalar.getValue(), scalar.getValue() - now);
+            }
+            lastScalarTimestamp = new ScalarTimestamp(Math.max(now, scalar.getValue()));
+            // Set last vector timestamp and always force local event count value for current node
+            vectorClock.merge(vector, nodeIndex, getEventCount());
+            lastVectorTimestamp = vectorClock.snapshot();
+
+            stored = new TimestampedMeasurement(measurement, lastScalarTimestamp, lastVectorTimestamp);
+            metrics.recordStoreLockNanos(System.nanoTime() - lockedAt);
+        }
+        metrics.increment(Counter.MEASUREMENTS_STORED);
 
-        // Set the largest scalar timestamp as current
-        lastScalarTimestamp = new ScalarTimestamp(clock.currentTimeMillis());
-        if (scalar.getValue() > lastScalarTimestamp.getValue()) {
-            log.debug("Scalar value changed from {} to {}", lastScalarTimestamp.getValue(), scalar.getValue());
-            clock.setOffset(scalar.getValue() - lastScalarTimestamp.getValue());
-            lastScalarTimestamp = new ScalarTimestamp(clock.currentTimeMillis());
+        Integer co = measurement.getCo();
+        if (co != null) {
+            coAggregator.record(co);
+        }
+        if (log.isDebugEnabled()) {
+            measurements.add(stored.getVectorTimestamp(), stored);
         }
-        // Set last vector timestamp and always force local event count value for current node
-        lastVectorTimestamp = VectorTimestamp.combine(lastVectorTimestamp, vector, nodeIndex, getEventCount());
+        if (measurementLog != null) {
+            uncommitted.add(new LoggedMeasurement(source, stored));
+        }
+        return stored;
+    }
+
+    /**
+     * Returns all logged measurements with a scalar timestamp between the
+     * given bounds, inclusive, in the order they were stored. Measurements
+     * stored since the last commit to the log are not included.
+     *
+     * @param from smallest scalar timestamp
+     * @param to largest scalar timestamp
+     * @return measurements in the range
+     * @throws IllegalStateException if the node is not running or does not log measurements
+     */
+    public List<LoggedMeasurement> getMeasurements(long from, long to) {
+        return getMeasurementLog().query(from, to);
+    }
 
-        measurements.add(measurement);
-        scalarTimestampMap.put(lastScalarTimestamp, measurement);
-        vectorTimestampMap.put(lastVectorTimestamp, measurement);
+    /**
+     * Passes all logged measurements with a scalar timestamp between the
+     * given bounds, inclusive, to the consumer, without collecting them.
+     *
+     * @param from smallest scalar timestamp
+     * @param to largest scalar timestamp
+     * @param consumer consumer of the measurements
+     * @throws IllegalStateException if the node is not running or does not log measurements
+     * @see #getMeasurements(long, long)
+     */
+    public void forEachMeasurement(long from, long to, Consumer<LoggedMeasurement> consumer) {
+        getMeasurementLog().forEach(from, to, consumer);
+    }
+
+    private MeasurementLog getMeasurementLog() {
+        MeasurementLog current = measurementLog;
+        if (current == null) {
+            throw new IllegalStateException("Node " + name + " has no open measurement log");
+        }
+        return current;
+    }
+
+    /**
+     * Appends measurements stored since the last commit to the log and
+     * forces them to disk together.
+     */
+    private void commitLog() {
+        List<LoggedMeasurement> batch = uncommitted.drain();
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            measurementLog.appendAll(batch);
+        } catch (IOException | RuntimeException e) {
+            log.error("Unable to commit {} measurements to the log", batch.size(), e);
+        }
+    }
+
+    private void closeLog() {
+        if (measurementLog == null) {
+            return;
+        }
+
+        commitLog();
+        try {
+            measurementLog.close();
+        } catch (IOException e) {
+            log.error("Unable to close the measurement log", e);
+        }
+        measurementLog = null;
+    }
+
+    /**
+     * Returns the summary of CO measurements stored in the current window so far.
+     *
+     * @return summary of the current window
+     */
+    public WindowSummary getCurrentCoWindow() {
+        return coAggregator.getCurrent();
+    }
+
+    /**
+     * Returns the summary of CO measurements of the last closed window, or
+     * <tt>null</tt> if no window has been closed yet.
+     *
+     * @return summary of the last closed window
+     */
+    public WindowSummary getLastCoWindow() {
+        return coAggregator.getLast();
     }
 
     private void recordEvent() {
         eventCount.incrementAndGet();
     }
 
+    /**
+     * Closes the current aggregation window and publishes its results. When
+     * debug logging is enabled, the measurements of the window are also
+     * listed sorted by their timestamps.
+     */
     private class SortJob implements Runnable {
 
         @Override
         public void run() {
-            // Calculate average CO value
-            double averageCO = measurements.stream()
-                    .map(Measurement::getCo)
-                    .filter(Objects::nonNull)
-                    .mapToInt(Integer::intValue)
-                    .average()
-                    .orElse(Double.NaN);
-
-            // Sort measurements by timestamps and clear all global measurements
-            TreeMap<ScalarTimestamp, Measurement> scalar = new TreeMap<>(scalarTimestampMap);
-            TreeMap<VectorTimestamp, Measurement> vector = new TreeMap<>(vectorTimestampMap);
-            synchronized (Node.this) {
-                scalarTimestampMap.clear();
-                vectorTimestampMap.clear();
-                measurements.clear();
+            long start = System.nanoTime();
+            try {
+                sort();
+            } finally {
+                metrics.recordSortJobMicros((System.nanoTime() - start) / 1000);
+            }
+        }
+
+        private void sort() {
+            WindowSummary co = coAggregator.rotate();
+            log.info("Average CO measurement: {}", co.getMean());
+            log.info("CO window: {}", co);
+
+            // Take all listed measurements of this window, already in causal order; later ones go to the next window
+            List<CausalSorter.Event<TimestampedMeasurement>> window = measurements.drain();
+            if (window.isEmpty()) {
+                return;
+            }
+
+            // Sort measurements by scalar timestamps
+            List<String> scalar = window.stream()
+                    .map(CausalSorter.Event::getItem)
+                    .sorted(Comparator.comparing(TimestampedMeasurement::getScalarTimestamp).reversed())
+                    .map(m -> m.getScalarTimestamp() + "=" + m.getMeasurement())
+                    .collect(Collectors.toList());
+            List<String> vector = new ArrayList<>(window.size());
+            for (int i = window.size() - 1; i >= 0; i--) {
+                CausalSorter.Event<TimestampedMeasurement> event = window.get(i);
+                vector.add(event.getTimestamp() + "=" + event.getItem().getMeasurement());
             }
 
-            // Log required information
-            log.info("Average CO measurement: {}", averageCO);
-            log.info("Measurements (scalar):  {}", scalar.descendingMap());
-            log.info("Measurements (vector):  {}", vector.descendingMap());
+            log.debug("Measurements (scalar):  {}", scalar);
+            log.debug("Measurements (vector):  {}", vector);
         }
     }
 }
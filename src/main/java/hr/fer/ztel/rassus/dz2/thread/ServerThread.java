@@ -1,88 +1,273 @@
 package hr.fer.ztel.rassus.dz2.thread;
 
-import com.google.gson.Gson;
+import hr.fer.ztel.rassus.dz2.codec.PacketCodecs;
+import hr.fer.ztel.rassus.dz2.membership.Member;
+import hr.fer.ztel.rassus.dz2.membership.Membership;
+import hr.fer.ztel.rassus.dz2.metrics.NodeMetrics.Counter;
 import hr.fer.ztel.rassus.dz2.model.MeasurementPacket;
-import hr.fer.ztel.rassus.dz2.stupidudp.network.SimpleSimulatedDatagramSocket;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+import hr.fer.ztel.rassus.dz2.stupidudp.network.NetworkLink;
+import hr.fer.ztel.rassus.dz2.stupidudp.network.NetworkLinks;
+import hr.fer.ztel.rassus.dz2.transport.Confirmation;
+import hr.fer.ztel.rassus.dz2.transport.Datagram;
+import hr.fer.ztel.rassus.dz2.transport.DuplicateFilter;
+import hr.fer.ztel.rassus.dz2.transport.Endpoint;
+import hr.fer.ztel.rassus.dz2.transport.Gossip;
+import hr.fer.ztel.rassus.dz2.transport.Heartbeat;
+import hr.fer.ztel.rassus.dz2.transport.Transport;
+import hr.fer.ztel.rassus.dz2.util.ByteBufferPool;
+import hr.fer.ztel.rassus.dz2.util.Settings;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import lombok.extern.log4j.Log4j2;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketTimeoutException;
-import java.util.HashSet;
-import java.util.Set;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
-import static hr.fer.ztel.rassus.dz2.util.Utility.RECEIVE_CONFIRMATION;
+import java.util.function.BiConsumer;
 
 @Log4j2
 @ToString
 public class ServerThread extends Thread {
 
+    /**
+     * Ways in which the server thread can receive datagrams.
+     */
+    public enum ReceiveMode {
+        /** Blocking endpoint, every datagram is processed by a {@link ClientWorker}. */
+        BLOCKING,
+        /**
+         * Non-blocking channel and a selector, datagrams are decoded on the
+         * loop thread. Only available on transports that support channels.
+         */
+        SELECTOR
+    }
+
     /** Socket timeout, in milliseconds. */
     private static final int DEFAULT_SO_TIMEOUT = 1000;
-    private static final int BUFFER_SIZE = 256;
+    private static final int BUFFER_SIZE = PacketCodecs.MAX_PACKET_SIZE;
+    /** Number of direct buffers used by the selector loop. */
+    private static final int BUFFER_POOL_SIZE = 16;
+    /** Number of packets per sender remembered for detecting duplicates. */
+    private static final int DEDUP_WINDOW_SIZE = 1024;
 
     @ToString.Exclude
     private final transient ExecutorService threadPool = Executors.newFixedThreadPool(
-            Runtime.getRuntime().availableProcessors() - 1
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1)
     );
 
-    /** IDs of packages already received and stored. */
-    private final Set<String> receivedIds = new HashSet<>();
+    /** Epochs and sequence numbers of packets already received, per sender. */
+    private final DuplicateFilter receivedIds;
+    /** Parameters of forwarding received packets, <tt>null</tt> if they are not forwarded. */
+    private final Gossip gossip;
+    /** Peers that heartbeats are sent to and received from. */
+    private final Membership membership;
+    /** Time the next heartbeats are due, in milliseconds. */
+    private long nextHeartbeatMillis;
+    /** Encoding buffer of each thread that forwards packets. */
+    private final ThreadLocal<ByteBuffer> encodeBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(PacketCodecs.MAX_PACKET_SIZE));
 
     private final Node node;
+    private final Transport transport;
     @Getter private final int port;
     @Getter private final double lossRate;
     @Getter private final int averageDelay;
+    @Getter private final ReceiveMode receiveMode;
+
+    public ServerThread(Node node, Transport transport, int port, double lossRate, int averageDelay) {
+        this(node, transport, port, lossRate, averageDelay,
+                Settings.getEnum(Settings.SERVER_RECEIVE_MODE, ReceiveMode.SELECTOR));
+    }
 
-    public ServerThread(Node node, int port, double lossRate, int averageDelay) {
-        super("ServerThread");
+    public ServerThread(Node node, Transport transport, int port, double lossRate, int averageDelay, ReceiveMode receiveMode) {
+        super("ServerThread-" + node.getName());
         this.node = node;
+        this.transport = transport;
         this.port = port;
         this.lossRate = lossRate;
         this.averageDelay = averageDelay;
+        this.receiveMode = transport.supportsChannels() ? receiveMode : ReceiveMode.BLOCKING;
+        this.receivedIds = new DuplicateFilter(node.getTotalNodes(), DEDUP_WINDOW_SIZE);
+        this.gossip = node.getGossip();
+        this.membership = node.getMembership();
+        node.getMetrics().setMissingPackets(receivedIds::getMissing);
+        node.getMetrics().setClockSkewBound(node.getClockSynchronizer()::getSkewBoundMillis);
     }
 
     @Override
     public void run() {
-        try (DatagramSocket serverSocket = new SimpleSimulatedDatagramSocket(port, lossRate, averageDelay)) {
-            serverSocket.setSoTimeout(DEFAULT_SO_TIMEOUT);
+        log.info("Receiving packets on port {} in {} mode", port, receiveMode);
+        membership.restart();
 
+        try {
+            if (receiveMode == ReceiveMode.SELECTOR) {
+                new SelectorLoop().run();
+            } else {
+                runBlocking();
+            }
+        } finally {
+            threadPool.shutdown();
+        }
+    }
+
+    private void runBlocking() {
+        try (Endpoint endpoint = transport.bind(port, lossRate, averageDelay)) {
             while (!Thread.currentThread().isInterrupted()) {
-                try {
-                    acceptClient(serverSocket);
-                } catch (SocketTimeoutException e) {
-                    continue;
-                }
+                acceptClient(endpoint);
+                heartbeatIfDue((bytes, target) -> {
+                    try {
+                        endpoint.send(bytes, target);
+                    } catch (IOException e) {
+                        log.error("Unable to send heartbeat to {}", target, e);
+                    }
+                });
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
-        } finally {
-            threadPool.shutdown();
         }
     }
 
     /**
      * Accepts the client <b>blocking</b> the thread while waiting for a
-     * client socket.
+     * datagram, at most for the receive timeout.
      *
-     * @param serverSocket server socket that accepts clients
-     * @throws SocketTimeoutException if the server socket has timed out
-     * @throws IOException            if an I/O or other socket exception occurs
+     * @param endpoint endpoint that accepts clients
+     * @throws IOException if an I/O or other socket exception occurs
      */
-    private void acceptClient(DatagramSocket serverSocket) throws IOException {
-        byte[] rcvBuf = new byte[BUFFER_SIZE];
-        DatagramPacket packet = new DatagramPacket(rcvBuf, rcvBuf.length);
-        serverSocket.receive(packet);
-        ClientWorker cw = new ClientWorker(serverSocket, packet);
+    private void acceptClient(Endpoint endpoint) throws IOException {
+        Datagram datagram = endpoint.receive(receiveTimeout());
+        if (datagram == null) {
+            return;
+        }
+        ClientWorker cw = new ClientWorker(endpoint, datagram);
         threadPool.submit(cw);
     }
 
+    /**
+     * Returns the longest time to wait for a datagram, short enough not to
+     * delay heartbeats.
+     */
+    private int receiveTimeout() {
+        if (!membership.isDetectingFailures()) {
+            return DEFAULT_SO_TIMEOUT;
+        }
+        return (int) Math.max(1, Math.min(DEFAULT_SO_TIMEOUT, membership.getHeartbeatIntervalMillis()));
+    }
+
+    /**
+     * Sends the heartbeat of this node to every member once per heartbeat
+     * interval, suspects members whose heartbeats are overdue and
+     * synchronizes the clock. Called by the receiving thread after every
+     * datagram or receive timeout.
+     *
+     * @param sender sends a datagram to an address
+     */
+    private void heartbeatIfDue(BiConsumer<byte[], SocketAddress> sender) {
+        if (!membership.isDetectingFailures()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now < nextHeartbeatMillis) {
+            return;
+        }
+        nextHeartbeatMillis = now + membership.getHeartbeatIntervalMillis();
+
+        for (Member member : membership.getMembers()) {
+            sender.accept(membership.heartbeatTo(member), member.getAddress());
+        }
+        membership.detectFailures();
+        node.getClockSynchronizer().synchronize();
+    }
+
+    /**
+     * Records the datagram as a heartbeat if it is one.
+     *
+     * @return <tt>true</tt> if the datagram was a heartbeat
+     */
+    private boolean receiveHeartbeat(ByteBuffer buffer, SocketAddress source) {
+        Heartbeat heartbeat = Heartbeat.parse(buffer);
+        if (heartbeat == null) {
+            return false;
+        }
+        membership.heartbeatReceived(source, heartbeat);
+        return true;
+    }
+
+    private static byte[] confirmationOf(MeasurementPacket measurementPacket) {
+        return new Confirmation(measurementPacket.getEpoch(), measurementPacket.getSequence()).encode();
+    }
+
+    /**
+     * Returns <tt>true</tt> if the packet only names nodes known to the
+     * membership, so that storing it grows the vector clock no further than
+     * the known nodes. A packet from a node that just joined is rejected
+     * without confirmation until its heartbeat arrives, and is sent again.
+     */
+    private boolean isKnown(MeasurementPacket measurementPacket) {
+        int clockSize = membership.getClockSize();
+        int sender = measurementPacket.getSender();
+        if (sender < 0 || sender >= clockSize) {
+            return false;
+        }
+        for (TimestampedMeasurement m : measurementPacket.getMeasurements()) {
+            if (m.getVectorTimestamp().size() > clockSize) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rejectUnknown(MeasurementPacket measurementPacket, SocketAddress source) {
+        node.getMetrics().increment(Counter.PACKETS_REJECTED);
+        log.warn("Rejecting packet {} of node {} from {}, which names nodes that are not known",
+                measurementPacket.getSequence(), measurementPacket.getSender(), source);
+    }
+
+    private boolean isFirstReceipt(MeasurementPacket measurementPacket) {
+        // Gossip brings own packets back from other nodes
+        if (measurementPacket.getSender() == node.getNodeIndex()) {
+            return false;
+        }
+        return receivedIds.accept(measurementPacket.getSender(),
+                measurementPacket.getEpoch(), measurementPacket.getSequence());
+    }
+
+    /**
+     * Returns the encoded packet to forward to other nodes, with one round
+     * less, or <tt>null</tt> if the packet is not forwarded.
+     */
+    private byte[] forwardingOf(MeasurementPacket measurementPacket) {
+        if (gossip == null || measurementPacket.getRounds() <= 0) {
+            return null;
+        }
+
+        MeasurementPacket forwarded = new MeasurementPacket(measurementPacket.getSender(),
+                measurementPacket.getEpoch(), measurementPacket.getSequence(),
+                measurementPacket.getRounds() - 1, measurementPacket.getMeasurements());
+        ByteBuffer buffer = encodeBuffer.get();
+        buffer.clear();
+        PacketCodecs.getDefault().encode(forwarded, buffer);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private void storeMeasurements(MeasurementPacket measurementPacket) {
+        for (TimestampedMeasurement m : measurementPacket.getMeasurements()) {
+            node.storeMeasurement(measurementPacket.getSender(),
+                    m.getMeasurement(), m.getScalarTimestamp(), m.getVectorTimestamp());
+        }
+    }
+
     /**
      * Runnable object that processes datagram packets and sends confirmation to the client.
      *
@@ -90,49 +275,183 @@ public class ServerThread extends Thread {
      */
     @RequiredArgsConstructor
     private class ClientWorker implements Runnable {
-        /** Datagram socket for communication with the client. */
-        private final DatagramSocket socket;
-        /** Packet received from the client. */
-        private final DatagramPacket packet;
+        /** Endpoint for communication with the client. */
+        private final Endpoint endpoint;
+        /** Datagram received from the client. */
+        private final Datagram datagram;
 
         @Override
         public void run() {
-            log.info("Receiving packet from {}", packet.getSocketAddress());
+            log.debug("Receiving packet from {}", datagram.getAddress());
 
             try {
-                // Receive measurement in JSON format from client
-                String rcvString = new String(packet.getData(), packet.getOffset(), packet.getLength());
-
-                // Create a DatagramPacket and send confirmation of receipt
-                byte[] bytes = RECEIVE_CONFIRMATION.getBytes();
-                DatagramPacket sendPacket = new DatagramPacket(
-                        bytes, bytes.length, packet.getAddress(), packet.getPort());
-                log.debug("Received packet. Sending confirmation...");
-                socket.send(sendPacket);
-
-                // Convert string to JSON and check package ID
-                Gson gson = new Gson();
-                MeasurementPacket measurementPacket = gson.fromJson(rcvString, MeasurementPacket.class);
-                if (receivedIds.contains(measurementPacket.getId())) {
-                    log.info("Received packet is a duplicate: {}", measurementPacket);
+                ByteBuffer buffer = ByteBuffer.wrap(datagram.getData());
+                if (receiveHeartbeat(buffer, datagram.getAddress())) {
+                    return;
+                }
+
+                // Decode measurement in any known format from client
+                MeasurementPacket measurementPacket;
+                try {
+                    measurementPacket = PacketCodecs.decode(buffer);
+                } catch (IllegalArgumentException e) {
+                    node.getMetrics().increment(Counter.PACKETS_MALFORMED);
+                    log.warn("Discarding malformed packet from {}", datagram.getAddress(), e);
+                    return;
+                }
+                node.getMetrics().increment(Counter.PACKETS_RECEIVED);
+                if (!isKnown(measurementPacket)) {
+                    rejectUnknown(measurementPacket, datagram.getAddress());
+                    return;
+                }
+
+                // Send confirmation of receipt, gossip is not confirmed
+                if (gossip == null) {
+                    log.debug("Received packet. Sending confirmation...");
+                    endpoint.send(confirmationOf(measurementPacket), datagram.getAddress());
+                }
+
+                // Check epoch and sequence number of the packet
+                if (!isFirstReceipt(measurementPacket)) {
+                    node.getMetrics().increment(Counter.PACKETS_DUPLICATED);
+                    log.debug("Received packet is a duplicate: {}", measurementPacket);
                     return;
                 }
 
-                storeMeasurement(measurementPacket);
-                receivedIds.add(measurementPacket.getId());
-                log.debug("Finished processing packet from {}", packet.getSocketAddress());
+                byte[] forwarded = forwardingOf(measurementPacket);
+                if (forwarded != null) {
+                    for (SocketAddress peer : gossip.choosePeers(measurementPacket.getSender())) {
+                        endpoint.send(forwarded, peer);
+                        node.getMetrics().increment(Counter.PACKETS_FORWARDED);
+                    }
+                }
+
+                storeMeasurements(measurementPacket);
+                log.debug("Finished processing packet from {}", datagram.getAddress());
             } catch (IOException e) {
-                log.error("An I/O exception occurred", e);
+                if (endpoint.isClosed()) {
+                    log.debug("Endpoint closed before confirmation to {} was sent", datagram.getAddress());
+                } else {
+                    log.error("An I/O exception occurred", e);
+                }
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
         }
+    }
 
-        private void storeMeasurement(MeasurementPacket measurementPacket) {
-            node.storeMeasurement(
-                    measurementPacket.getMeasurement(),
-                    measurementPacket.getScalarTimestamp(),
-                    measurementPacket.getVectorTimestamp());
+    /**
+     * Receive loop over a single non-blocking datagram channel. Datagrams are
+     * read into pooled direct buffers, decoded, confirmed, checked for
+     * duplicates and forwarded on the loop thread; only storing the
+     * measurement is handed off to the thread pool.
+     */
+    private class SelectorLoop implements Runnable {
+        /** Buffers reused for every received datagram. */
+        private final ByteBufferPool bufferPool = new ByteBufferPool(BUFFER_POOL_SIZE, BUFFER_SIZE);
+        /** Simulated link over which confirmations and forwarded packets are sent. */
+        private final NetworkLink link = NetworkLinks.createLink(lossRate, averageDelay);
+
+        @Override
+        public void run() {
+            try (DatagramChannel channel = DatagramChannel.open();
+                 Selector selector = Selector.open()) {
+                channel.bind(new InetSocketAddress(port));
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ);
+
+                while (!Thread.currentThread().isInterrupted()) {
+                    if (selector.select(receiveTimeout()) > 0) {
+                        selector.selectedKeys().clear();
+                        receiveAll(channel);
+                    }
+                    heartbeatIfDue((bytes, target) -> send(channel, target, bytes));
+                }
+            } catch (ClosedByInterruptException e) {
+                log.debug("Receive loop was interrupted");
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Reads datagrams from the channel until there are no more pending.
+         *
+         * @param channel channel in non-blocking mode
+         * @throws IOException if an I/O error occurs
+         */
+        private void receiveAll(DatagramChannel channel) throws IOException {
+            while (true) {
+                ByteBuffer buffer = bufferPool.acquire();
+                try {
+                    SocketAddress source = channel.receive(buffer);
+                    if (source == null) {
+                        return;
+                    }
+
+                    buffer.flip();
+                    process(channel, source, buffer);
+                } finally {
+                    bufferPool.release(buffer);
+                }
+            }
+        }
+
+        private void process(DatagramChannel channel, SocketAddress source, ByteBuffer buffer) {
+            log.debug("Receiving packet from {}", source);
+            if (receiveHeartbeat(buffer, source)) {
+                return;
+            }
+
+            MeasurementPacket measurementPacket;
+            try {
+                measurementPacket = PacketCodecs.decode(buffer);
+            } catch (IllegalArgumentException e) {
+                node.getMetrics().increment(Counter.PACKETS_MALFORMED);
+                log.warn("Discarding malformed packet from {}", source, e);
+                return;
+            }
+            node.getMetrics().increment(Counter.PACKETS_RECEIVED);
+            if (!isKnown(measurementPacket)) {
+                rejectUnknown(measurementPacket, source);
+                return;
+            }
+
+            if (gossip == null) {
+                send(channel, source, confirmationOf(measurementPacket));
+            }
+            if (!isFirstReceipt(measurementPacket)) {
+                node.getMetrics().increment(Counter.PACKETS_DUPLICATED);
+                log.debug("Received packet is a duplicate: {}", measurementPacket);
+                return;
+            }
+
+            byte[] forwarded = forwardingOf(measurementPacket);
+            if (forwarded != null) {
+                for (SocketAddress peer : gossip.choosePeers(measurementPacket.getSender())) {
+                    send(channel, peer, forwarded);
+                    node.getMetrics().increment(Counter.PACKETS_FORWARDED);
+                }
+            }
+
+            threadPool.submit(() -> storeMeasurements(measurementPacket));
+        }
+
+        /**
+         * Sends a confirmation, heartbeat or forwarded packet over the channel,
+         * simulating the same network as the socket of the blocking mode.
+         */
+        private void send(DatagramChannel channel, SocketAddress target, byte[] bytes) {
+            ByteBuffer datagram = ByteBuffer.wrap(bytes);
+            link.transmit(datagram.remaining(), () -> {
+                try {
+                    channel.send(datagram, target);
+                } catch (ClosedChannelException e) {
+                    log.debug("Channel closed before datagram to {} was sent", target);
+                } catch (IOException e) {
+                    log.error("Unable to send datagram to {}", target, e);
+                }
+            });
         }
     }
 }
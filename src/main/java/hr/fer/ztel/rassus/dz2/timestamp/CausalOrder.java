@@ -0,0 +1,15 @@
+package hr.fer.ztel.rassus.dz2.timestamp;
+
+/**
+ * Causal relation of one vector timestamp to another.
+ */
+public enum CausalOrder {
+    /** The first event happened before the second one. */
+    BEFORE,
+    /** The first event happened after the second one. */
+    AFTER,
+    /** Neither event happened before the other one. */
+    CONCURRENT,
+    /** Both timestamps are identical. */
+    EQUAL
+}
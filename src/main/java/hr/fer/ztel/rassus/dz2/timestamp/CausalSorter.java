@@ -0,0 +1,112 @@
+package hr.fer.ztel.rassus.dz2.timestamp;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps items with vector timestamps in an order that is consistent with
+ * causality as they are added: an item whose event happened before
+ * another one is always returned first. Items with concurrent timestamps
+ * are ordered deterministically by comparing components in node index
+ * order, and items with equal timestamps keep their insertion order, so no
+ * item is ever lost.
+ * <p>
+ * Instead of comparing every pair of items, items are ordered by the sum
+ * of their components, which is a linear extension of the causal order.
+ * The sum is computed once per item when it is added, and the item is put
+ * into its place in a skip list, so adding takes logarithmic time and
+ * draining needs no sort. Items may be added by any thread, concurrently
+ * with a drain; an item added during a drain is returned by it or by the
+ * next one.
+ *
+ * @param <T> type of sorted items
+ */
+public class CausalSorter<T> {
+
+    private static final Comparator<Event<?>> CAUSAL_ORDER = (e1, e2) -> {
+        int difference = Long.compare(e1.sum, e2.sum);
+        if (difference != 0) {
+            return difference;
+        }
+        difference = VectorTimestamp.compareComponents(e1.timestamp.getRawValues(), e2.timestamp.getRawValues());
+        if (difference != 0) {
+            return difference;
+        }
+        return Long.compare(e1.insertion, e2.insertion);
+    };
+
+    private final NavigableSet<Event<T>> events = new ConcurrentSkipListSet<>(CAUSAL_ORDER);
+    private final AtomicLong insertions = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Adds an item with its timestamp in its causal place.
+     *
+     * @param timestamp vector timestamp of the item
+     * @param item the item
+     */
+    public void add(VectorTimestamp timestamp, T item) {
+        events.add(new Event<>(timestamp, item, insertions.getAndIncrement()));
+        size.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of items added since the last drain.
+     *
+     * @return the number of items
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns all items added since the last drain in causal order and
+     * removes them from this sorter.
+     *
+     * @return items in causal order
+     */
+    public List<Event<T>> drain() {
+        int count = size.get();
+        List<Event<T>> sorted = new ArrayList<>(count);
+        Event<T> event;
+        // Bounded by the size at the start, so that a steady stream of items cannot prolong the drain
+        while (sorted.size() < count && (event = events.pollFirst()) != null) {
+            sorted.add(event);
+        }
+        size.addAndGet(-sorted.size());
+        return sorted;
+    }
+
+    /**
+     * Item with its vector timestamp.
+     *
+     * @param <T> type of the item
+     */
+    @Getter
+    public static class Event<T> {
+        private final VectorTimestamp timestamp;
+        private final T item;
+        private final long sum;
+        /** Number of items added before this one, orders items with equal timestamps. */
+        private final long insertion;
+
+        private Event(VectorTimestamp timestamp, T item, long insertion) {
+            this.timestamp = timestamp;
+            this.item = item;
+            this.sum = timestamp.sum();
+            this.insertion = insertion;
+        }
+
+        @Override
+        public String toString() {
+            return timestamp + "=" + item;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package hr.fer.ztel.rassus.dz2.timestamp;
+
+import java.util.Arrays;
+
+/**
+ * Mutable vector clock of a single node. Merging is done in place, without
+ * allocation; an immutable {@link VectorTimestamp} is created only by
+ * {@link #snapshot()}. Not thread-safe, the owner must synchronize access.
+ * <p>
+ * The clock grows when it merges a timestamp with more components, which
+ * happens once a node that joined the network is heard of. It never
+ * shrinks, since the components of nodes that left still order the events
+ * they took part in. Growth is bounded by the receiver, which only
+ * accepts timestamps of nodes that its membership knows.
+ */
+public class VectorClock {
+
+    private int[] values;
+
+    /**
+     * Creates a clock with all components set to zero.
+     *
+     * @param size number of nodes in the cluster
+     */
+    public VectorClock(int size) {
+        this.values = new int[size];
+    }
+
+    /**
+     * Merges the given timestamp into this clock and sets the component at
+     * the specified index to the given value.
+     *
+     * @param timestamp timestamp of a received event
+     * @param index index of the local node
+     * @param indexValue local event count
+     */
+    public void merge(VectorTimestamp timestamp, int index, int indexValue) {
+        ensureSize(Math.max(timestamp.size(), index + 1));
+        timestamp.mergeInto(values, index, indexValue);
+    }
+
+    /**
+     * Sets the component at the specified index to the given value.
+     *
+     * @param index index of the component
+     * @param value the new value
+     */
+    public void set(int index, int value) {
+        ensureSize(index + 1);
+        values[index] = value;
+    }
+
+    private void ensureSize(int size) {
+        if (size > values.length) {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Returns the number of components of this clock.
+     *
+     * @return the cardinality of this clock
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Returns an immutable copy of the current state of this clock.
+     *
+     * @return the current timestamp
+     */
+    public VectorTimestamp snapshot() {
+        return VectorTimestamp.wrap(values.clone());
+    }
+}
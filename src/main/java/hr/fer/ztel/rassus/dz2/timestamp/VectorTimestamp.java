@@ -1,24 +1,78 @@
 package hr.fer.ztel.rassus.dz2.timestamp;
 
-import hr.fer.ztel.rassus.dz2.util.Utility;
 import lombok.EqualsAndHashCode;
-import lombok.Getter;
 import lombok.ToString;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 
-@Getter
+/**
+ * Immutable vector timestamp backed by a primitive array. Mutable clocks
+ * should use {@link VectorClock} and take snapshots of it only when a
+ * timestamp is actually stored or sent.
+ * <p>
+ * The causal relation of two timestamps is given by {@link #causalCompare}.
+ * The natural ordering is a total order consistent with it: timestamps are
+ * ordered by the sum of their components, which is strictly greater for an
+ * event that happened after another, and then by comparing components in
+ * node index order.
+ * <p>
+ * Timestamps may have different cardinalities when nodes join the network,
+ * since clocks grow to include the components of new nodes. A missing
+ * component is treated as zero, the count of a node that had no events yet.
+ */
 @ToString
 @EqualsAndHashCode
 public class VectorTimestamp implements Comparable<VectorTimestamp> {
 
-    private final List<Integer> values = new LinkedList<>();
+    private final int[] values;
 
     public VectorTimestamp(int... values) {
-        for (int value : values) {
-            this.values.add(value);
-        }
+        this.values = values.clone();
+    }
+
+    /**
+     * Creates a timestamp that takes ownership of the given array, which must
+     * not be modified afterwards.
+     */
+    static VectorTimestamp wrap(int[] values) {
+        return new VectorTimestamp(values, false);
+    }
+
+    private VectorTimestamp(int[] values, boolean copy) {
+        this.values = copy ? values.clone() : values;
+    }
+
+    /**
+     * Returns the number of components of this timestamp.
+     *
+     * @return the cardinality of this timestamp
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Returns the component at the given index.
+     *
+     * @param index index of the component
+     * @return the component at the given index
+     */
+    public int get(int index) {
+        return values[index];
+    }
+
+    /** Returns the backing array, which must not be modified. */
+    int[] getRawValues() {
+        return values;
+    }
+
+    /**
+     * Returns a copy of all components of this timestamp.
+     *
+     * @return a copy of all components
+     */
+    public int[] getValues() {
+        return values.clone();
     }
 
     /**
@@ -28,19 +82,11 @@ public class VectorTimestamp implements Comparable<VectorTimestamp> {
      * @param vector1 a vector timestamp
      * @param vector2 a vector timestamp
      * @return a new vector timestamp
-     * @throws IllegalArgumentException if vectors are not of same cardinality
      */
     public static VectorTimestamp combine(VectorTimestamp vector1, VectorTimestamp vector2) {
-        if (vector1.values.size() != vector2.values.size()) {
-            throw new IllegalArgumentException("Both vectors must be of same cardinality!");
-        }
-
-        int[] newValues = new int[vector1.values.size()];
-        for (int i = 0, n = vector1.values.size(); i < n; i++) {
-            newValues[i] = Math.max(vector1.values.get(i), vector2.values.get(i));
-        }
-
-        return new VectorTimestamp(newValues);
+        int[] newValues = Arrays.copyOf(vector1.values, Math.max(vector1.values.length, vector2.values.length));
+        vector2.mergeInto(newValues);
+        return wrap(newValues);
     }
 
     /**
@@ -53,22 +99,135 @@ public class VectorTimestamp implements Comparable<VectorTimestamp> {
      * @param index index of the value to be explicitly set
      * @param indexValue value to be set on the given index
      * @return a new vector timestamp
-     * @throws IllegalArgumentException if vectors are not of same cardinality
+     * @throws IndexOutOfBoundsException if the index is not a component of either vector
      */
     public static VectorTimestamp combine(VectorTimestamp vector1, VectorTimestamp vector2, int index, int indexValue) {
-        VectorTimestamp newVector = combine(vector1, vector2);
-        newVector.values.set(index, indexValue);
-        return newVector;
+        int[] newValues = Arrays.copyOf(vector1.values, Math.max(vector1.values.length, vector2.values.length));
+        vector2.mergeInto(newValues, index, indexValue);
+        return wrap(newValues);
+    }
+
+    /**
+     * Merges this timestamp into the target array in place, so that each
+     * element of the target holds the greater of the two values. The target
+     * may have more components than this timestamp.
+     *
+     * @param target components of a mutable clock
+     * @throws IllegalArgumentException if the target has fewer components than this timestamp
+     */
+    public void mergeInto(int[] target) {
+        if (target.length < values.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Target of cardinality %d can not hold timestamp of cardinality %d",
+                    target.length, values.length));
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] > target[i]) {
+                target[i] = values[i];
+            }
+        }
+    }
+
+    /**
+     * Merges this timestamp into the target array in place, then sets the
+     * element at the specified index explicitly to the given value.
+     *
+     * @param target components of a mutable clock
+     * @param index index of the value to be explicitly set
+     * @param indexValue value to be set on the given index
+     * @throws IllegalArgumentException if the target has fewer components than this timestamp
+     */
+    public void mergeInto(int[] target, int index, int indexValue) {
+        mergeInto(target);
+        target[index] = indexValue;
+    }
+
+    /**
+     * Returns the sum of all components, which is the number of events this
+     * timestamp has seen. An event that happened after another always has a
+     * greater sum.
+     *
+     * @return the sum of all components
+     */
+    public long sum() {
+        long sum = 0;
+        for (int value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the causal relation of the event with this timestamp to the
+     * event with the other timestamp.
+     *
+     * @param other a vector timestamp
+     * @return the causal relation of this timestamp to the other one
+     */
+    public CausalOrder causalCompare(VectorTimestamp other) {
+        boolean less = false;
+        boolean greater = false;
+        int common = Math.min(values.length, other.values.length);
+        for (int i = 0; i < common; i++) {
+            if (values[i] < other.values[i]) {
+                less = true;
+            } else if (values[i] > other.values[i]) {
+                greater = true;
+            }
+        }
+        // Components only one of the timestamps has are compared to zero
+        for (int i = common; i < values.length; i++) {
+            greater |= values[i] > 0;
+        }
+        for (int i = common; i < other.values.length; i++) {
+            less |= other.values[i] > 0;
+        }
+
+        if (less && greater) {
+            return CausalOrder.CONCURRENT;
+        } else if (less) {
+            return CausalOrder.BEFORE;
+        } else if (greater) {
+            return CausalOrder.AFTER;
+        } else {
+            return CausalOrder.EQUAL;
+        }
+    }
+
+    /**
+     * Returns <tt>true</tt> if the event with this timestamp happened before
+     * the event with the other timestamp.
+     *
+     * @param other a vector timestamp
+     * @return <tt>true</tt> if this event happened before the other one
+     */
+    public boolean happenedBefore(VectorTimestamp other) {
+        return causalCompare(other) == CausalOrder.BEFORE;
     }
 
     @Override
     public int compareTo(VectorTimestamp other) {
-        if (values.size() != other.values.size()) {
-            throw new IllegalArgumentException(String.format(
-                    "Invalid timestamp cardinality; expected %d, got %d",
-                    values.size(), other.values.size()));
+        int difference = Long.compare(sum(), other.sum());
+        if (difference != 0) {
+            return difference;
         }
 
-        return Utility.compareLists(values, other.values);
+        return compareComponents(values, other.values);
+    }
+
+    /**
+     * Compares components in node index order and returns the result of the
+     * first pair that differs, treating missing components as zero.
+     */
+    static int compareComponents(int[] values1, int[] values2) {
+        for (int i = 0, n = Math.max(values1.length, values2.length); i < n; i++) {
+            int value1 = i < values1.length ? values1[i] : 0;
+            int value2 = i < values2.length ? values2[i] : 0;
+            if (value1 != value2) {
+                return Integer.compare(value1, value2);
+            }
+        }
+        return 0;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,56 @@
+package hr.fer.ztel.rassus.dz2.transport;
+
+import hr.fer.ztel.rassus.dz2.util.Utility;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Confirmation of receipt of a packet, naming the epoch and sequence
+ * number of the packet. Encoded as <tt>RECEIVE_CONFIRMATION epoch sequence</tt>.
+ */
+@Value
+public class Confirmation {
+
+    private static final String PREFIX = Utility.RECEIVE_CONFIRMATION + " ";
+
+    private final long epoch;
+    private final long sequence;
+
+    /**
+     * Returns this confirmation encoded as bytes.
+     *
+     * @return the encoded confirmation
+     */
+    public byte[] encode() {
+        return (PREFIX + epoch + " " + sequence).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a confirmation, returning <tt>null</tt> if the bytes are not
+     * a confirmation.
+     *
+     * @param bytes array containing the confirmation
+     * @param offset offset of the confirmation in the array
+     * @param length length of the confirmation
+     * @return the confirmation, or <tt>null</tt>
+     */
+    public static Confirmation parse(byte[] bytes, int offset, int length) {
+        String s = new String(bytes, offset, length, StandardCharsets.UTF_8);
+        if (!s.startsWith(PREFIX)) {
+            return null;
+        }
+
+        int separator = s.indexOf(' ', PREFIX.length());
+        if (separator < 0) {
+            return null;
+        }
+        try {
+            return new Confirmation(
+                    Long.parseLong(s.substring(PREFIX.length(), separator)),
+                    Long.parseLong(s.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
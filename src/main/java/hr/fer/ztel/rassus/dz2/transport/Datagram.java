@@ -0,0 +1,18 @@
+package hr.fer.ztel.rassus.dz2.transport;
+
+import lombok.ToString;
+import lombok.Value;
+
+import java.net.SocketAddress;
+
+/**
+ * Datagram received on an {@link Endpoint}.
+ */
+@Value
+public class Datagram {
+    /** Address of the endpoint that sent the datagram. */
+    private final SocketAddress address;
+    /** Contents of the datagram, exactly as long as the datagram. */
+    @ToString.Exclude
+    private final byte[] data;
+}
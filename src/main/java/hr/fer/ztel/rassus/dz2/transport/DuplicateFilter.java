@@ -0,0 +1,175 @@
+package hr.fer.ztel.rassus.dz2.transport;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe filter of duplicate packets, based on the epoch and sequence
+ * number that every sender assigns to its packets. Each sender has a
+ * sliding window of the last <tt>windowSize</tt> sequence numbers of its
+ * latest epoch; a packet is accepted once if its sequence number falls
+ * inside the window, and packets older than the window or from an older
+ * epoch are always treated as duplicates. A packet from a newer epoch means
+ * that the sender has restarted its sequence numbers, and starts a new
+ * window; senders never reuse a sequence number within an epoch. Memory
+ * use is fixed per sender, no matter how many packets are received.
+ * <p>
+ * The window is a ring of sequence numbers indexed by the low bits of the
+ * sequence number, updated with compare-and-set, so accepting a packet
+ * takes no lock. Because sequence numbers are assigned
+ * without gaps, the window also counts sequence numbers that were skipped
+ * and have not arrived yet.
+ * <p>
+ * The filter grows when a sender with a higher index than any before
+ * appears, which happens when a node joins the network. Growing, and
+ * starting the window of a new epoch, take a lock, since they happen once
+ * per sender and restart.
+ */
+public class DuplicateFilter {
+
+    private static final long EMPTY = -1;
+    /** Largest number of senders, bounds the memory a bogus sender index can take. */
+    private static final int MAX_SENDERS = 1 << 16;
+
+    private final int windowSize;
+    /** Window of each sender, replaced by a larger copy when the filter grows. */
+    private volatile AtomicReferenceArray<SenderWindow> windows;
+
+    /**
+     * Creates a filter.
+     *
+     * @param senderCount initial number of senders, which are indexed from zero
+     * @param windowSize number of sequence numbers remembered per sender, a power of two
+     */
+    public DuplicateFilter(int senderCount, int windowSize) {
+        if (windowSize <= 0 || Integer.bitCount(windowSize) != 1) {
+            throw new IllegalArgumentException("Window size must be a power of two: " + windowSize);
+        }
+        this.windowSize = windowSize;
+        this.windows = new AtomicReferenceArray<>(senderCount);
+    }
+
+    /**
+     * Accepts the packet if it has not been accepted before. Packets with
+     * an invalid sender index are never accepted.
+     *
+     * @param sender index of the sender
+     * @param epoch epoch of the sender
+     * @param sequence non-negative sequence number of the packet
+     * @return <tt>true</tt> if the packet is seen for the first time
+     */
+    public boolean accept(int sender, long epoch, long sequence) {
+        if (sender < 0 || sender >= MAX_SENDERS || sequence < 0) {
+            return false;
+        }
+
+        AtomicReferenceArray<SenderWindow> current = windows;
+        SenderWindow window = sender < current.length() ? current.get(sender) : null;
+        if (window == null || window.epoch < epoch) {
+            // First packet from the sender since it (re)started
+            window = startEpoch(sender, epoch);
+        }
+        return window.epoch == epoch && window.accept(sequence);
+    }
+
+    /**
+     * Returns the window of the sender for the given epoch, starting it if
+     * the sender has no window of this or a later epoch yet.
+     */
+    private synchronized SenderWindow startEpoch(int sender, long epoch) {
+        AtomicReferenceArray<SenderWindow> current = windows;
+        if (sender >= current.length()) {
+            int length = Math.min(MAX_SENDERS, Math.max(sender + 1, 2 * current.length()));
+            AtomicReferenceArray<SenderWindow> grown = new AtomicReferenceArray<>(length);
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            windows = grown;
+            current = grown;
+        }
+
+        SenderWindow window = current.get(sender);
+        if (window == null || window.epoch < epoch) {
+            window = new SenderWindow(epoch, windowSize);
+            current.set(sender, window);
+        }
+        return window;
+    }
+
+    /**
+     * Returns the number of packets of the current epoch of the sender that
+     * were skipped by later packets and have not arrived yet.
+     *
+     * @param sender index of the sender
+     * @return number of missing packets
+     */
+    public long getMissing(int sender) {
+        AtomicReferenceArray<SenderWindow> current = windows;
+        SenderWindow window = sender < current.length() ? current.get(sender) : null;
+        return window == null ? 0 : window.getMissing();
+    }
+
+    /**
+     * Returns the number of missing packets of all senders.
+     *
+     * @return number of missing packets
+     */
+    public long getMissing() {
+        long missing = 0;
+        for (int i = 0, n = windows.length(); i < n; i++) {
+            missing += getMissing(i);
+        }
+        return missing;
+    }
+
+    /**
+     * Sliding window of the sequence numbers of a single epoch of a sender.
+     */
+    private static class SenderWindow {
+        private final long epoch;
+        private final int mask;
+        /** Last sequence number accepted in each slot. */
+        private final AtomicLongArray slots;
+        private final AtomicLong highest = new AtomicLong(EMPTY);
+        private final LongAdder accepted = new LongAdder();
+
+        private SenderWindow(long epoch, int windowSize) {
+            this.epoch = epoch;
+            this.mask = windowSize - 1;
+            this.slots = new AtomicLongArray(windowSize);
+            for (int i = 0; i < windowSize; i++) {
+                slots.set(i, EMPTY);
+            }
+        }
+
+        boolean accept(long sequence) {
+            if (isTooOld(sequence)) {
+                return false;
+            }
+
+            int slot = (int) sequence & mask;
+            while (true) {
+                long current = slots.get(slot);
+                if (current >= sequence) {
+                    // Seen before, or the slot already belongs to a newer packet
+                    return false;
+                }
+                if (slots.compareAndSet(slot, current, sequence)) {
+                    accepted.increment();
+                    highest.accumulateAndGet(sequence, Math::max);
+                    return true;
+                }
+            }
+        }
+
+        long getMissing() {
+            return Math.max(0, highest.get() + 1 - accepted.sum());
+        }
+
+        private boolean isTooOld(long sequence) {
+            return sequence <= highest.get() - slots.length();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package hr.fer.ztel.rassus.dz2.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+
+/**
+ * Datagram endpoint opened by a {@link Transport}. Sent datagrams go over
+ * the simulated link of the endpoint and may be lost or delayed. Sending
+ * is thread-safe; datagrams are received by one thread at a time.
+ */
+public interface Endpoint extends Closeable {
+
+    /**
+     * Returns the address that receivers of datagrams sent from this
+     * endpoint see as their source.
+     *
+     * @return local address of this endpoint
+     */
+    SocketAddress getLocalAddress();
+
+    /**
+     * Sends the datagram to the given address. The data is not used by the
+     * endpoint after this method returns.
+     *
+     * @param data contents of the datagram
+     * @param target address of the receiving endpoint
+     * @throws IOException if the endpoint is closed or an I/O error occurs
+     */
+    void send(byte[] data, SocketAddress target) throws IOException;
+
+    /**
+     * Receives a datagram, waiting at most the given time for one to arrive.
+     *
+     * @param timeoutMillis maximum time to wait, in milliseconds
+     * @return the received datagram, or <tt>null</tt> if none arrived in time
+     * @throws IOException if the endpoint is closed or an I/O error occurs
+     */
+    Datagram receive(int timeoutMillis) throws IOException;
+
+    /**
+     * Returns <tt>true</tt> if this endpoint has been closed.
+     *
+     * @return <tt>true</tt> if this endpoint has been closed
+     */
+    boolean isClosed();
+
+    @Override
+    void close();
+
+}
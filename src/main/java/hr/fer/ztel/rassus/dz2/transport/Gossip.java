@@ -0,0 +1,131 @@
+package hr.fer.ztel.rassus.dz2.transport;
+
+import hr.fer.ztel.rassus.dz2.membership.Member;
+import hr.fer.ztel.rassus.dz2.membership.Membership;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Parameters of epidemic dissemination of packets. The node that creates a
+ * packet sends it to <tt>fanout</tt> peers chosen at random, and every node
+ * that receives the packet for the first time forwards it to another
+ * <tt>fanout</tt> random peers, until the packet has been forwarded
+ * <tt>rounds</tt> times. Since every node forwards a packet at most once, each
+ * node sends every packet at most <tt>fanout</tt> times no matter how large
+ * the network is.
+ * <p>
+ * With a fanout of <tt>ln(N) + c</tt> in a network of <tt>N</tt> nodes, the
+ * expected number of nodes that a packet never reaches is <tt>e^-c</tt>, so
+ * the packet reaches all nodes with high probability. Packet loss lowers
+ * the effective fanout by the loss ratio.
+ */
+public class Gossip {
+
+    /** Constant added to <tt>ln(N)</tt> in the default fanout. */
+    private static final int FANOUT_MARGIN = 2;
+
+    private final Membership membership;
+    /** Number of peers each node sends a packet to, 0 to scale it with the network. */
+    private final int fanout;
+    /** Number of times a packet is forwarded after it was first sent, 0 to scale it with the network. */
+    private final int rounds;
+
+    /**
+     * Creates gossip parameters.
+     *
+     * @param membership peers a packet can be sent to
+     * @param fanout number of peers each node sends a packet to, 0 to scale it with the network
+     * @param rounds number of times a packet is forwarded after it was first sent, 0 to scale it with the network
+     */
+    public Gossip(Membership membership, int fanout, int rounds) {
+        if (fanout < 0 || rounds < 0) {
+            throw new IllegalArgumentException("Invalid fanout " + fanout + " or rounds " + rounds);
+        }
+        this.membership = membership;
+        this.fanout = fanout;
+        this.rounds = rounds;
+    }
+
+    /**
+     * Returns the number of peers each node sends a packet to.
+     *
+     * @return the fanout
+     */
+    public int getFanout() {
+        return fanout > 0 ? fanout : defaultFanout(membership.getMembers().size() + 1);
+    }
+
+    /**
+     * Returns the number of times a packet is forwarded after it was first sent.
+     *
+     * @return the number of rounds
+     */
+    public int getRounds() {
+        return rounds > 0 ? rounds : defaultRounds(membership.getMembers().size() + 1);
+    }
+
+    /**
+     * Returns the default fanout for a network of the given size,
+     * <tt>ceil(ln(N)) + 2</tt>.
+     *
+     * @param nodeCount number of nodes in the network, including this one
+     * @return the default fanout
+     */
+    public static int defaultFanout(int nodeCount) {
+        return (int) Math.ceil(Math.log(Math.max(1, nodeCount))) + FANOUT_MARGIN;
+    }
+
+    /**
+     * Returns the default number of rounds for a network of the given size,
+     * <tt>ceil(log2(N))</tt>, which is more than the number of rounds needed to
+     * reach all nodes with any fanout of at least two.
+     *
+     * @param nodeCount number of nodes in the network, including this one
+     * @return the default number of rounds
+     */
+    public static int defaultRounds(int nodeCount) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(1, nodeCount - 1)));
+    }
+
+    /**
+     * Chooses <tt>fanout</tt> distinct available peers uniformly at random,
+     * or all of them if there are not as many. Uses Floyd's sampling
+     * algorithm, so the cost depends on the fanout and not on the number
+     * of peers.
+     *
+     * @param excluded index of the node that is never chosen, the sender of
+     *        the packet being forwarded, or <tt>-1</tt> to exclude none
+     * @return the addresses of the chosen peers
+     */
+    public List<SocketAddress> choosePeers(int excluded) {
+        List<Member> peers = membership.getAvailablePeers();
+        int count = getFanout();
+
+        // One extra peer stands in for the excluded one if it is chosen
+        int sampled = Math.min(excluded < 0 ? count : count + 1, peers.size());
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Set<Integer> chosen = new HashSet<>(2 * sampled);
+        for (int j = peers.size() - sampled; j < peers.size(); j++) {
+            int t = random.nextInt(j + 1);
+            chosen.add(chosen.contains(t) ? j : t);
+        }
+
+        List<SocketAddress> result = new ArrayList<>(sampled);
+        for (int i : chosen) {
+            Member peer = peers.get(i);
+            if (excluded < 0 || peer.getIndex() != excluded) {
+                result.add(peer.getAddress());
+            }
+        }
+        if (result.size() > count) {
+            // Dropping a random peer of a uniform sample keeps it uniform
+            result.remove(random.nextInt(result.size()));
+        }
+        return result;
+    }
+}
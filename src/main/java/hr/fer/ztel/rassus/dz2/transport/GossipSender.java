@@ -0,0 +1,170 @@
+package hr.fer.ztel.rassus.dz2.transport;
+
+import hr.fer.ztel.rassus.dz2.codec.PacketCodec;
+import hr.fer.ztel.rassus.dz2.codec.PacketCodecs;
+import hr.fer.ztel.rassus.dz2.metrics.NodeMetrics;
+import hr.fer.ztel.rassus.dz2.metrics.NodeMetrics.Counter;
+import hr.fer.ztel.rassus.dz2.model.MeasurementPacket;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Epidemic delivery of measurements, see {@link Gossip}. Every packet is
+ * sent once to a few random peers, which forward it further, instead of to
+ * every neighbour with retransmissions. Packets are not confirmed; a lost
+ * packet is made up for by the other copies of the same packet spreading
+ * through the network.
+ * <p>
+ * All peers receive the same packet with the same sequence number, so the
+ * sequence numbers of this node are shared by all receivers and their
+ * duplicate filters recognize copies that arrive over different paths.
+ * <p>
+ * Measurements are batched as in {@link PeerWindow}: the batch is flushed
+ * when the next measurement would not fit into the maximum packet size,
+ * right away if no batch was flushed for the maximum delay, so that rare
+ * measurements are not delayed, and otherwise once the oldest measurement
+ * in the batch has waited for the maximum delay.
+ */
+@Log4j2
+public class GossipSender implements MeasurementSender {
+
+    private final int nodeIndex;
+    /** Epoch of the packets of this sender, the time it was created; its sequence numbers never start again. */
+    @Getter private final long epoch = System.currentTimeMillis();
+    private final Endpoint endpoint;
+    private final Gossip gossip;
+    private final NodeMetrics metrics;
+    private final ScheduledThreadPoolExecutor timers = new ScheduledThreadPoolExecutor(1);
+    private final PacketCodec codec = PacketCodecs.getDefault();
+    /** Encoding buffer, used only while holding the lock of this sender. */
+    private final ByteBuffer encodeBuffer = ByteBuffer.allocate(PacketCodecs.MAX_PACKET_SIZE);
+
+    /** Maximum encoded size of the measurements of a batch, the maximum packet size less its header. */
+    @Getter private final int maxBatchSize;
+    @Getter private final long maxBatchDelay;
+
+    /** Measurements waiting to be sent in the next packet. */
+    private List<TimestampedMeasurement> batch = new ArrayList<>();
+    /** Upper bound of the encoded size of the measurements of the batch, in bytes. */
+    private int batchSize;
+    private ScheduledFuture<?> flushTimer;
+    private long lastFlushMillis;
+
+    private long nextSequence;
+
+    /**
+     * Creates a gossip sender.
+     *
+     * @param nodeIndex index of this node, the sender of all packets
+     * @param endpoint endpoint used for sending packets
+     * @param gossip peers and parameters of the dissemination
+     * @param maxPacketSize maximum size of a packet with a batch of measurements, in bytes
+     * @param maxBatchDelay maximum time a measurement waits for a batch to fill up, in milliseconds
+     * @param metrics metrics of the node
+     */
+    public GossipSender(int nodeIndex, Endpoint endpoint, Gossip gossip,
+                        int maxPacketSize, long maxBatchDelay, NodeMetrics metrics) {
+        this.nodeIndex = nodeIndex;
+        this.endpoint = endpoint;
+        this.gossip = gossip;
+        this.metrics = metrics;
+        this.maxBatchSize = Math.min(maxPacketSize, PacketCodecs.MAX_PACKET_SIZE) - codec.maxHeaderSize();
+        this.maxBatchDelay = maxBatchDelay;
+
+        timers.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Sends the measurement with its timestamps to <tt>fanout</tt> random
+     * peers, batched with other measurements sent shortly before or after it.
+     *
+     * @param measurement measurement with its timestamps
+     */
+    @Override
+    public synchronized void send(TimestampedMeasurement measurement) {
+        int size = codec.encodedSize(measurement);
+        if (!batch.isEmpty() && batchSize + size > maxBatchSize) {
+            flush();
+        }
+        batch.add(measurement);
+        batchSize += size;
+
+        if (batchSize >= maxBatchSize || System.currentTimeMillis() - lastFlushMillis >= maxBatchDelay) {
+            flush();
+        } else if (flushTimer == null) {
+            flushTimer = timers.schedule(this::flushExpired, maxBatchDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns <tt>false</tt>, packets are never queued.
+     */
+    @Override
+    public boolean isBackedUp() {
+        return false;
+    }
+
+    private synchronized void flushExpired() {
+        flushTimer = null;
+        if (!batch.isEmpty()) {
+            flush();
+        }
+    }
+
+    /**
+     * Turns the current batch into a packet with the next sequence number
+     * and sends it to random peers.
+     */
+    private void flush() {
+        if (flushTimer != null) {
+            flushTimer.cancel(false);
+            flushTimer = null;
+        }
+
+        long sequence = nextSequence++;
+        byte[] bytes = encode(createPacket(sequence, batch));
+        int measurements = batch.size();
+        batch = new ArrayList<>();
+        batchSize = 0;
+        lastFlushMillis = System.currentTimeMillis();
+
+        for (SocketAddress address : gossip.choosePeers(-1)) {
+            log.debug("Gossiping packet {} with {} measurements to {}", sequence, measurements, address);
+            try {
+                endpoint.send(bytes, address);
+                metrics.increment(Counter.PACKETS_SENT);
+                metrics.add(Counter.MEASUREMENTS_SENT, measurements);
+            } catch (IOException e) {
+                // Treated as a lost packet, the other peers spread it further
+                log.error("Unable to send packet to {}", address, e);
+            }
+        }
+    }
+
+    private MeasurementPacket createPacket(long sequence, List<TimestampedMeasurement> measurements) {
+        return new MeasurementPacket(nodeIndex, epoch, sequence, gossip.getRounds(), measurements);
+    }
+
+    private byte[] encode(MeasurementPacket measurementPacket) {
+        encodeBuffer.clear();
+        codec.encode(measurementPacket, encodeBuffer);
+        return Arrays.copyOf(encodeBuffer.array(), encodeBuffer.position());
+    }
+
+    @Override
+    public void close() {
+        timers.shutdownNow();
+        endpoint.close();
+    }
+}
@@ -0,0 +1,83 @@
+package hr.fer.ztel.rassus.dz2.transport;
+
+import lombok.Value;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Heartbeat a node sends to its peers from its receiving address, so that
+ * they know it is alive and where it receives measurements.
+ * <p>
+ * Heartbeats also carry the timestamps of NTP symmetric mode, so every
+ * pair of heartbeats exchanged by two nodes is a clock synchronization
+ * sample: the transmit time of the heartbeat, and the transmit time of the
+ * last heartbeat received from the peer echoed together with the time it
+ * was received. Times are read from the uncorrected clock of the sender,
+ * which also sends its current correction. Encoded as
+ * <tt>HEARTBEAT index transmit origin receive correction</tt>.
+ */
+@Value
+public class Heartbeat {
+
+    private static final String PREFIX = "HEARTBEAT ";
+    private static final byte[] PREFIX_BYTES = PREFIX.getBytes(StandardCharsets.UTF_8);
+    /** Longest valid heartbeat, the prefix, an integer and four longs with separators. */
+    private static final int MAX_LENGTH = PREFIX.length() + 11 + 4 * 21;
+
+    /** Index of the node that sent the heartbeat. */
+    private final int index;
+    /** Time the heartbeat was sent, in milliseconds. */
+    private final long transmitTime;
+    /** Transmit time of the last heartbeat received from the peer, 0 if none was received. */
+    private final long originTime;
+    /** Time the last heartbeat of the peer was received, in milliseconds. */
+    private final long receiveTime;
+    /** Correction of the clock of the sender, in milliseconds. */
+    private final long correction;
+
+    /**
+     * Returns this heartbeat encoded as bytes.
+     *
+     * @return the encoded heartbeat
+     */
+    public byte[] encode() {
+        return (PREFIX + index + ' ' + transmitTime + ' ' + originTime + ' ' + receiveTime + ' ' + correction)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a heartbeat from the remaining bytes of the buffer, returning
+     * <tt>null</tt> if they are not a heartbeat. The buffer is read with
+     * absolute reads and is not modified.
+     *
+     * @param buffer buffer containing the datagram
+     * @return the heartbeat, or <tt>null</tt>
+     */
+    public static Heartbeat parse(ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if (length <= PREFIX_BYTES.length || length > MAX_LENGTH) {
+            return null;
+        }
+        for (int i = 0; i < PREFIX_BYTES.length; i++) {
+            if (buffer.get(buffer.position() + i) != PREFIX_BYTES[i]) {
+                return null;
+            }
+        }
+
+        byte[] bytes = new byte[length - PREFIX_BYTES.length];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(buffer.position() + PREFIX_BYTES.length + i);
+        }
+        String[] parts = new String(bytes, StandardCharsets.US_ASCII).split(" ");
+        if (parts.length != 5) {
+            return null;
+        }
+        try {
+            return new Heartbeat(Integer.parseInt(parts[0]), Long.parseLong(parts[1]),
+                    Long.parseLong(parts[2]), Long.parseLong(parts[3]), Long.parseLong(parts[4]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package hr.fer.ztel.rassus.dz2.transport;
+
+import hr.fer.ztel.rassus.dz2.stupidudp.network.NetworkLink;
+import hr.fer.ztel.rassus.dz2.stupidudp.network.NetworkLinks;
+import lombok.extern.log4j.Log4j2;
+
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process transport that connects endpoints of a single JVM with queues,
+ * so that large networks of nodes can be simulated without opening a
+ * socket per node. Outgoing datagrams go over the same simulated links as
+ * with {@link UdpTransport}, and are then put into the queue of the endpoint
+ * bound to the target address. As with UDP, datagrams to an address nobody
+ * listens on, or to an endpoint whose queue is full, are silently dropped.
+ * <p>
+ * Endpoints are addressed as ports on the loopback address. Endpoints of
+ * different instances of this class can not reach each other.
+ */
+@Log4j2
+public class LoopbackTransport implements Transport {
+
+    /** Maximum number of datagrams waiting to be received on an endpoint. */
+    private static final int DEFAULT_QUEUE_CAPACITY = 4096;
+    /** First port assigned to endpoints opened on any available port. */
+    private static final int FIRST_EPHEMERAL_PORT = 49152;
+    private static final int LAST_PORT = 65535;
+
+    private final ConcurrentMap<SocketAddress, LoopbackEndpoint> endpoints = new ConcurrentHashMap<>();
+    private final AtomicInteger nextEphemeralPort = new AtomicInteger(FIRST_EPHEMERAL_PORT);
+    private final int queueCapacity;
+
+    public LoopbackTransport() {
+        this(DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a transport whose endpoints queue at most the given number of
+     * datagrams.
+     *
+     * @param queueCapacity maximum number of datagrams waiting on an endpoint
+     */
+    public LoopbackTransport(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Returns the address of the given port on this transport.
+     *
+     * @param port the port
+     * @return address of the port
+     */
+    public static InetSocketAddress address(int port) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    @Override
+    public Endpoint bind(int port, double lossRate, int averageDelay) throws SocketException {
+        LoopbackEndpoint endpoint = new LoopbackEndpoint(address(port), NetworkLinks.createLink(lossRate, averageDelay));
+        if (endpoints.putIfAbsent(endpoint.localAddress, endpoint) != null) {
+            throw new BindException("Address already in use: " + endpoint.localAddress);
+        }
+        return endpoint;
+    }
+
+    @Override
+    public Endpoint open(double lossRate, int averageDelay) throws SocketException {
+        for (int attempt = FIRST_EPHEMERAL_PORT; attempt <= LAST_PORT; attempt++) {
+            int port = nextEphemeralPort.getAndUpdate(p -> p == LAST_PORT ? FIRST_EPHEMERAL_PORT : p + 1);
+            try {
+                return bind(port, lossRate, averageDelay);
+            } catch (BindException e) {
+                continue;
+            }
+        }
+        throw new BindException("No available ports");
+    }
+
+    @Override
+    public boolean supportsChannels() {
+        return false;
+    }
+
+    /**
+     * Returns the number of endpoints currently open on this transport.
+     *
+     * @return number of open endpoints
+     */
+    public int getEndpointCount() {
+        return endpoints.size();
+    }
+
+    /**
+     * Puts the datagram into the queue of the endpoint bound to the target
+     * address. Runs on the {@code DelayScheduler} once the datagram arrives.
+     */
+    private void deliver(SocketAddress target, Datagram datagram) {
+        LoopbackEndpoint endpoint = endpoints.get(target);
+        if (endpoint == null) {
+            log.debug("Dropping datagram to {}, nobody is listening", target);
+            return;
+        }
+        if (!endpoint.inbox.offer(datagram)) {
+            log.debug("Dropping datagram to {}, receive queue is full", target);
+        }
+    }
+
+    /**
+     * Endpoint with a bounded queue of received datagrams.
+     */
+    private class LoopbackEndpoint implements Endpoint {
+
+        private final InetSocketAddress localAddress;
+        private final NetworkLink link;
+        private final BlockingQueue<Datagram> inbox = new ArrayBlockingQueue<>(queueCapacity);
+        private volatile boolean closed;
+
+        private LoopbackEndpoint(InetSocketAddress localAddress, NetworkLink link) {
+            this.localAddress = localAddress;
+            this.link = link;
+        }
+
+        @Override
+        public SocketAddress getLocalAddress() {
+            return localAddress;
+        }
+
+        @Override
+        public void send(byte[] data, SocketAddress target) throws SocketException {
+            checkOpen();
+            Datagram datagram = new Datagram(localAddress, data.clone());
+            link.transmit(data.length, () -> deliver(target, datagram));
+        }
+
+        @Override
+        public Datagram receive(int timeoutMillis) throws SocketException {
+            checkOpen();
+            try {
+                return inbox.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        private void checkOpen() throws SocketException {
+            if (closed) {
+                throw new SocketException("Socket is closed");
+            }
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            endpoints.remove(localAddress, this);
+            inbox.clear();
+        }
+    }
+}
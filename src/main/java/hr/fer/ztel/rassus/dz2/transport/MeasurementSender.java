@@ -0,0 +1,31 @@
+package hr.fer.ztel.rassus.dz2.transport;
+
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+
+import java.io.Closeable;
+
+/**
+ * Sender of the measurements a node takes to the other nodes of the
+ * network, see {@link ReliableSender} and {@link GossipSender}.
+ */
+public interface MeasurementSender extends Closeable {
+
+    /**
+     * Sends the measurement with its timestamps to the other nodes. This
+     * method does not block waiting for the network.
+     *
+     * @param measurement measurement with its timestamps
+     */
+    void send(TimestampedMeasurement measurement);
+
+    /**
+     * Returns <tt>true</tt> if measurements are produced faster than they
+     * can be sent, so new measurements should not be taken for now.
+     *
+     * @return <tt>true</tt> if new measurements should not be sent for now
+     */
+    boolean isBackedUp();
+
+    @Override
+    void close();
+}
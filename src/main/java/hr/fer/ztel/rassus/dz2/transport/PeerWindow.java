@@ -0,0 +1,270 @@
+package hr.fer.ztel.rassus.dz2.transport;
+
+import hr.fer.ztel.rassus.dz2.aggregate.LogLinearHistogram;
+import hr.fer.ztel.rassus.dz2.metrics.NodeMetrics;
+import hr.fer.ztel.rassus.dz2.metrics.NodeMetrics.Counter;
+import hr.fer.ztel.rassus.dz2.model.MeasurementPacket;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Selective repeat sliding window of packets sent to a single peer.
+ * Every packet gets the next sequence number of this peer and only
+ * packets with sequence numbers lower than <tt>base + windowSize</tt>
+ * are allowed in flight, where <tt>base</tt> is the lowest unconfirmed
+ * sequence number. Each confirmation names exactly one packet, so
+ * packets may be confirmed in any order.
+ * <p>
+ * Every window has its own epoch, so its sequence numbers, which start
+ * from zero, are never reused within an epoch even when the window of a
+ * peer is replaced.
+ * <p>
+ * Measurements are collected into a batch that is sent as one packet.
+ * The batch is flushed when the next measurement would not fit into the
+ * maximum packet size, when nothing is in flight, so that measurements
+ * are not delayed on an idle link, and otherwise once the oldest
+ * measurement in the batch has waited for the maximum delay.
+ * <p>
+ * All methods lock on the window itself, so windows of different peers
+ * never contend with each other.
+ */
+@Log4j2
+class PeerWindow {
+
+    @Getter private final SocketAddress address;
+    /** Epoch of the packets of this window. */
+    @Getter private final long epoch;
+    private final ReliableSender sender;
+    private final RttEstimator rttEstimator;
+    private final NodeMetrics metrics;
+    /** Round-trip times to the peer, in milliseconds. */
+    private final LogLinearHistogram rttHistogram;
+
+    /** Packets sent and not yet confirmed, ordered by sequence number. */
+    private final Map<Long, InFlight> inFlight = new LinkedHashMap<>();
+    /** Packets waiting for the window to slide. */
+    private final Deque<InFlight> queued = new ArrayDeque<>();
+
+    /** Measurements waiting to be sent in the next packet. */
+    private List<TimestampedMeasurement> batch = new ArrayList<>();
+    /** Upper bound of the encoded size of the measurements of the batch, in bytes. */
+    private int batchSize;
+    private ScheduledFuture<?> flushTimer;
+
+    private long nextSequence;
+
+    PeerWindow(SocketAddress address, ReliableSender sender) {
+        this.address = address;
+        this.sender = sender;
+        this.epoch = sender.nextEpoch();
+        this.rttEstimator = new RttEstimator(
+                ReliableSender.INITIAL_TIMEOUT_MILLIS,
+                ReliableSender.MIN_TIMEOUT_MILLIS,
+                ReliableSender.MAX_TIMEOUT_MILLIS);
+        this.metrics = sender.getMetrics();
+        this.rttHistogram = metrics.rttHistogram(address);
+    }
+
+    /**
+     * Adds the measurement to the current batch, and sends the batch if it
+     * is full or if nothing is in flight.
+     *
+     * @param measurement the measurement with its timestamps
+     * @param size upper bound of the bytes the measurement adds to a packet
+     */
+    synchronized void offer(TimestampedMeasurement measurement, int size) {
+        if (!batch.isEmpty() && batchSize + size > sender.getMaxBatchSize()) {
+            flush();
+        }
+        batch.add(measurement);
+        batchSize += size;
+
+        if (batchSize >= sender.getMaxBatchSize() || isIdle()) {
+            flush();
+        } else if (flushTimer == null) {
+            flushTimer = sender.schedule(this::flushExpired, sender.getMaxBatchDelay());
+        }
+    }
+
+    /**
+     * Confirms the packet with the given sequence number and slides the window.
+     *
+     * @param sequence sequence number of the confirmed packet
+     */
+    synchronized void acknowledge(long sequence) {
+        InFlight entry = inFlight.remove(sequence);
+        if (entry == null) {
+            log.debug("Ignoring confirmation of unknown packet {} from {}", sequence, address);
+            return;
+        }
+
+        entry.timer.cancel(false);
+        metrics.increment(Counter.CONFIRMATIONS_RECEIVED);
+        if (entry.attempts == 1) {
+            long rtt = System.currentTimeMillis() - entry.sentAt;
+            rttEstimator.sample(rtt);
+            rttHistogram.record(rtt);
+        }
+        fill();
+
+        // The link became idle, there is no reason to wait for more measurements
+        if (isIdle() && !batch.isEmpty()) {
+            flush();
+        }
+    }
+
+    /**
+     * Called when the retransmission timer of a packet expires. The packet is
+     * sent again, or given up on after the maximum number of attempts.
+     *
+     * @param entry packet whose timer has expired
+     */
+    synchronized void expire(InFlight entry) {
+        if (inFlight.get(entry.sequence) != entry) {
+            return; // confirmed in the meantime
+        }
+
+        // Back off once per lost round, as with a single timer on the oldest packet
+        if (entry.sequence == base()) {
+            rttEstimator.backoff();
+        }
+        if (entry.attempts >= sender.getMaxAttempts()) {
+            log.warn("Packet {} to {} was not confirmed after {} attempts", entry.sequence, address, entry.attempts);
+            inFlight.remove(entry.sequence);
+            metrics.increment(Counter.PACKETS_EXPIRED);
+            fill();
+            return;
+        }
+
+        transmit(entry);
+    }
+
+    /**
+     * Returns <tt>true</tt> if at least half of the packets allowed to wait
+     * for the window to slide are waiting.
+     */
+    synchronized boolean isBackedUp() {
+        return queued.size() >= sender.getMaxQueued() / 2;
+    }
+
+    /**
+     * Gives up on all packets and measurements waiting to be sent to the
+     * peer, because it is suspected to have failed or has left.
+     */
+    synchronized void discard() {
+        if (isIdle() && batch.isEmpty()) {
+            return;
+        }
+
+        if (flushTimer != null) {
+            flushTimer.cancel(false);
+            flushTimer = null;
+        }
+        for (InFlight entry : inFlight.values()) {
+            entry.timer.cancel(false);
+        }
+        metrics.add(Counter.PACKETS_DROPPED, inFlight.size() + queued.size());
+        log.debug("Discarding {} packets in flight and {} queued to {}", inFlight.size(), queued.size(), address);
+
+        inFlight.clear();
+        queued.clear();
+        batch = new ArrayList<>();
+        batchSize = 0;
+    }
+
+    private synchronized void flushExpired() {
+        flushTimer = null;
+        if (!batch.isEmpty()) {
+            flush();
+        }
+    }
+
+    /**
+     * Turns the current batch into a packet with the next sequence number
+     * and sends it, or queues it if the window is full.
+     */
+    private void flush() {
+        if (flushTimer != null) {
+            flushTimer.cancel(false);
+            flushTimer = null;
+        }
+
+        MeasurementPacket packet = sender.createPacket(epoch, nextSequence, batch);
+        InFlight entry = new InFlight(nextSequence, sender.encode(packet), batch.size());
+        nextSequence++;
+        batch = new ArrayList<>();
+        batchSize = 0;
+
+        if (queued.size() >= sender.getMaxQueued()) {
+            InFlight dropped = queued.removeFirst();
+            metrics.increment(Counter.PACKETS_DROPPED);
+            log.warn("Send queue to {} is full, dropping packet {}", address, dropped.sequence);
+        }
+        queued.addLast(entry);
+        fill();
+    }
+
+    /**
+     * Sends queued packets while they fit into the window.
+     */
+    private void fill() {
+        while (!queued.isEmpty() && queued.peekFirst().sequence < base() + sender.getWindowSize()) {
+            InFlight entry = queued.removeFirst();
+            inFlight.put(entry.sequence, entry);
+            transmit(entry);
+        }
+    }
+
+    private boolean isIdle() {
+        return inFlight.isEmpty() && queued.isEmpty();
+    }
+
+    private long base() {
+        Iterator<InFlight> it = inFlight.values().iterator();
+        return it.hasNext() ? it.next().sequence : queued.isEmpty() ? nextSequence : queued.peekFirst().sequence;
+    }
+
+    private void transmit(InFlight entry) {
+        entry.attempts++;
+        entry.sentAt = System.currentTimeMillis();
+        if (entry.attempts == 1) {
+            metrics.increment(Counter.PACKETS_SENT);
+            metrics.add(Counter.MEASUREMENTS_SENT, entry.measurements);
+        } else {
+            metrics.increment(Counter.PACKETS_RETRANSMITTED);
+        }
+        sender.transmit(entry.sequence, entry.bytes, entry.measurements, address);
+        entry.timer = sender.schedule(() -> expire(entry), rttEstimator.getTimeout());
+    }
+
+    /**
+     * Packet with its transmission state.
+     */
+    static class InFlight {
+        private final long sequence;
+        /** Encoded packet, reused for retransmissions. */
+        private final byte[] bytes;
+        /** Number of measurements in the packet. */
+        private final int measurements;
+        private int attempts;
+        private long sentAt;
+        private ScheduledFuture<?> timer;
+
+        private InFlight(long sequence, byte[] bytes, int measurements) {
+            this.sequence = sequence;
+            this.bytes = bytes;
+            this.measurements = measurements;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package hr.fer.ztel.rassus.dz2.transport;
+
+import hr.fer.ztel.rassus.dz2.codec.PacketCodec;
+import hr.fer.ztel.rassus.dz2.codec.PacketCodecs;
+import hr.fer.ztel.rassus.dz2.membership.Member;
+import hr.fer.ztel.rassus.dz2.membership.Membership;
+import hr.fer.ztel.rassus.dz2.metrics.NodeMetrics;
+import hr.fer.ztel.rassus.dz2.model.MeasurementPacket;
+import hr.fer.ztel.rassus.dz2.model.TimestampedMeasurement;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reliable delivery of measurements to all neighbouring nodes over a
+ * single endpoint. Every neighbour has its own {@link PeerWindow},
+ * so a slow or lossy neighbour only fills up its own window and does not
+ * delay packets to the others. Confirmations are received on a dedicated
+ * thread and matched to the window by the address they came from and the
+ * packet id they name.
+ * <p>
+ * Neighbours are the members of a {@link Membership}. Measurements are not
+ * sent to a neighbour that is suspected to have failed, and packets waiting
+ * for it are given up on right away instead of being retransmitted. The
+ * window of a neighbour that leaves is removed, and one that rejoins gets a
+ * new window with a new epoch, which its receiver takes as a restart of
+ * this sender instead of as duplicates of the packets sent before it left.
+ */
+@Log4j2
+public class ReliableSender implements MeasurementSender {
+
+    /** Retransmission timeout before the first round-trip sample, in milliseconds. */
+    static final long INITIAL_TIMEOUT_MILLIS = 1000;
+    static final long MIN_TIMEOUT_MILLIS = 50;
+    static final long MAX_TIMEOUT_MILLIS = 10_000;
+    /** Socket timeout of the confirmation receiver, in milliseconds. */
+    private static final int RECEIVE_TIMEOUT_MILLIS = 1000;
+
+    private final int nodeIndex;
+    /** Last epoch given to a window, starting from the time this sender was created. */
+    private final AtomicLong lastEpoch = new AtomicLong(System.currentTimeMillis());
+    private final Endpoint endpoint;
+    @Getter private final NodeMetrics metrics;
+    private final Membership membership;
+    private final Map<SocketAddress, PeerWindow> windows = new ConcurrentHashMap<>();
+    /** Version of the membership whose departed members were last removed. */
+    private volatile int membershipVersion = -1;
+    private final ScheduledThreadPoolExecutor timers = new ScheduledThreadPoolExecutor(1);
+    private final Thread receiver;
+    private final PacketCodec codec = PacketCodecs.getDefault();
+    /** Encoding buffer of each thread that creates packets. */
+    private final ThreadLocal<ByteBuffer> encodeBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(PacketCodecs.MAX_PACKET_SIZE));
+
+    @Getter private final int windowSize;
+    @Getter private final int maxAttempts;
+    @Getter private final int maxQueued;
+    /** Maximum encoded size of the measurements of a batch, the maximum packet size less its header. */
+    @Getter private final int maxBatchSize;
+    @Getter private final long maxBatchDelay;
+
+    /**
+     * Creates a sender to the members of the given membership and starts
+     * receiving confirmations on the given endpoint.
+     *
+     * @param nodeIndex index of this node, the sender of all packets
+     * @param endpoint endpoint used for sending packets and receiving confirmations
+     * @param membership neighbouring nodes
+     * @param windowSize maximum number of unconfirmed packets per neighbour
+     * @param maxAttempts maximum number of times a packet is sent
+     * @param maxQueued maximum number of packets waiting for a window to slide
+     * @param maxPacketSize maximum size of a packet with a batch of measurements, in bytes
+     * @param maxBatchDelay maximum time a measurement waits for a batch to fill up, in milliseconds
+     * @param metrics metrics of the node
+     */
+    public ReliableSender(int nodeIndex, Endpoint endpoint, Membership membership,
+                          int windowSize, int maxAttempts, int maxQueued,
+                          int maxPacketSize, long maxBatchDelay, NodeMetrics metrics) {
+        this.nodeIndex = nodeIndex;
+        this.endpoint = endpoint;
+        this.metrics = metrics;
+        this.membership = membership;
+        this.windowSize = windowSize;
+        this.maxAttempts = maxAttempts;
+        this.maxQueued = maxQueued;
+        this.maxBatchSize = Math.min(maxPacketSize, PacketCodecs.MAX_PACKET_SIZE) - codec.maxHeaderSize();
+        this.maxBatchDelay = maxBatchDelay;
+
+        timers.setRemoveOnCancelPolicy(true);
+        receiver = new Thread(this::receiveConfirmations, "ConfirmationReceiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Sends the measurement with its timestamps to all available neighbouring
+     * nodes, batched with other measurements sent shortly before or after it.
+     * This method does not block waiting for confirmations.
+     *
+     * @param measurement measurement with its timestamps
+     */
+    @Override
+    public void send(TimestampedMeasurement measurement) {
+        int size = codec.encodedSize(measurement);
+        for (Member member : membership.getMembers()) {
+            PeerWindow window = windows.computeIfAbsent(member.getAddress(), address -> new PeerWindow(address, this));
+            if (member.isSuspected()) {
+                window.discard();
+            } else {
+                window.offer(measurement, size);
+            }
+        }
+        removeDeparted();
+    }
+
+    /**
+     * Removes the windows of neighbours that left the membership.
+     */
+    private void removeDeparted() {
+        int version = membership.getVersion();
+        if (version == membershipVersion) {
+            return;
+        }
+        membershipVersion = version;
+
+        windows.values().removeIf(window -> {
+            if (membership.isMember(window.getAddress())) {
+                return false;
+            }
+            window.discard();
+            return true;
+        });
+    }
+
+    /**
+     * Returns <tt>true</tt> if packets to every available neighbour are
+     * piling up behind their windows, meaning that measurements are produced
+     * faster than they can be delivered. A single slow neighbour does not
+     * count, its window drops its oldest packets instead.
+     *
+     * @return <tt>true</tt> if new measurements should not be sent for now
+     */
+    @Override
+    public boolean isBackedUp() {
+        boolean any = false;
+        for (Member member : membership.getMembers()) {
+            if (member.isSuspected()) {
+                continue;
+            }
+            PeerWindow window = windows.get(member.getAddress());
+            if (window == null || !window.isBackedUp()) {
+                return false;
+            }
+            any = true;
+        }
+        return any;
+    }
+
+    /**
+     * Returns a new epoch for a window, later than all epochs given before
+     * and than the time this sender was created.
+     */
+    long nextEpoch() {
+        long now = System.currentTimeMillis();
+        return lastEpoch.accumulateAndGet(now, (last, time) -> Math.max(last + 1, time));
+    }
+
+    MeasurementPacket createPacket(long epoch, long sequence, List<TimestampedMeasurement> measurements) {
+        return new MeasurementPacket(nodeIndex, epoch, sequence, 0, measurements);
+    }
+
+    byte[] encode(MeasurementPacket measurementPacket) {
+        ByteBuffer buffer = encodeBuffer.get();
+        buffer.clear();
+        codec.encode(measurementPacket, buffer);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    void transmit(long sequence, byte[] bytes, int measurements, SocketAddress address) {
+        log.debug("Sending packet {} with {} measurements to {}", sequence, measurements, address);
+
+        try {
+            endpoint.send(bytes, address);
+        } catch (IOException e) {
+            // Treated as a lost packet, the retransmission timer will fire
+            log.error("Unable to send packet to {}", address, e);
+        }
+    }
+
+    ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return timers.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void receiveConfirmations() {
+        while (!endpoint.isClosed()) {
+            Datagram datagram;
+            try {
+                datagram = endpoint.receive(RECEIVE_TIMEOUT_MILLIS);
+            } catch (IOException e) {
+                if (!endpoint.isClosed()) {
+                    log.error("Unable to receive confirmation", e);
+                }
+                continue;
+            }
+            if (datagram == null) {
+                continue;
+            }
+
+            byte[] data = datagram.getData();
+            Confirmation confirmation = Confirmation.parse(data, 0, data.length);
+            PeerWindow window = windows.get(datagram.getAddress());
+            if (confirmation == null || window == null || confirmation.getEpoch() != window.getEpoch()) {
+                log.debug("Ignoring unexpected packet from {}", datagram.getAddress());
+                continue;
+            }
+
+            window.acknowledge(confirmation.getSequence());
+        }
+    }
+
+    @Override
+    public void close() {
+        timers.shutdownNow();
+        endpoint.close();
+        receiver.interrupt();
+    }
+}
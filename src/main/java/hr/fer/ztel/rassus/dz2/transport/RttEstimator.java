@@ -0,0 +1,71 @@
+package hr.fer.ztel.rassus.dz2.transport;
+
+/**
+ * Estimates the retransmission timeout from measured round-trip times
+ * as described in RFC 6298. Until the first sample is taken the
+ * initial timeout is used. Not thread-safe.
+ */
+public class RttEstimator {
+
+    private static final double ALPHA = 1 / 8d;
+    private static final double BETA = 1 / 4d;
+    private static final int K = 4;
+
+    private final long minTimeout;
+    private final long maxTimeout;
+
+    private double smoothedRtt = -1;
+    private double rttVariation;
+    private long timeout;
+
+    /**
+     * Creates a new estimator.
+     *
+     * @param initialTimeout timeout used before the first sample, in milliseconds
+     * @param minTimeout lower bound for the timeout, in milliseconds
+     * @param maxTimeout upper bound for the timeout, in milliseconds
+     */
+    public RttEstimator(long initialTimeout, long minTimeout, long maxTimeout) {
+        this.minTimeout = minTimeout;
+        this.maxTimeout = maxTimeout;
+        this.timeout = clamp(initialTimeout);
+    }
+
+    /**
+     * Updates the estimate with a new round-trip time sample. Samples must
+     * not be taken from retransmitted packets (Karn's algorithm).
+     *
+     * @param rtt measured round-trip time, in milliseconds
+     */
+    public void sample(long rtt) {
+        if (smoothedRtt < 0) {
+            smoothedRtt = rtt;
+            rttVariation = rtt / 2d;
+        } else {
+            rttVariation = (1 - BETA) * rttVariation + BETA * Math.abs(smoothedRtt - rtt);
+            smoothedRtt = (1 - ALPHA) * smoothedRtt + ALPHA * rtt;
+        }
+
+        timeout = clamp(Math.round(smoothedRtt + K * rttVariation));
+    }
+
+    /**
+     * Doubles the timeout after a retransmission.
+     */
+    public void backoff() {
+        timeout = clamp(2 * timeout);
+    }
+
+    /**
+     * Returns the current retransmission timeout, in milliseconds.
+     *
+     * @return the current retransmission timeout
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    private long clamp(long value) {
+        return Math.max(minTimeout, Math.min(maxTimeout, value));
+    }
+}
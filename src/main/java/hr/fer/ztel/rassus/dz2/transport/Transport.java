@@ -0,0 +1,43 @@
+package hr.fer.ztel.rassus.dz2.transport;
+
+import java.io.IOException;
+
+/**
+ * Network over which nodes exchange datagrams. Every endpoint simulates
+ * loss and delay of its outgoing datagrams with the given parameters.
+ *
+ * @see UdpTransport
+ * @see LoopbackTransport
+ */
+public interface Transport {
+
+    /**
+     * Opens an endpoint that receives datagrams sent to the given port.
+     *
+     * @param port local port
+     * @param lossRate packet loss ratio of outgoing datagrams
+     * @param averageDelay average delay of outgoing datagrams, in milliseconds
+     * @return a new endpoint
+     * @throws IOException if the endpoint could not be opened or bound
+     */
+    Endpoint bind(int port, double lossRate, int averageDelay) throws IOException;
+
+    /**
+     * Opens an endpoint on any available port.
+     *
+     * @param lossRate packet loss ratio of outgoing datagrams
+     * @param averageDelay average delay of outgoing datagrams, in milliseconds
+     * @return a new endpoint
+     * @throws IOException if the endpoint could not be opened
+     */
+    Endpoint open(double lossRate, int averageDelay) throws IOException;
+
+    /**
+     * Returns <tt>true</tt> if ports of this transport are real UDP ports
+     * that can also be opened as NIO datagram channels.
+     *
+     * @return <tt>true</tt> if ports can be opened as channels
+     */
+    boolean supportsChannels();
+
+}
@@ -0,0 +1,88 @@
+package hr.fer.ztel.rassus.dz2.transport;
+
+import hr.fer.ztel.rassus.dz2.codec.PacketCodecs;
+import hr.fer.ztel.rassus.dz2.stupidudp.network.NetworkLinks;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+
+/**
+ * Transport over real UDP sockets with simulated loss and delay, see
+ * {@link NetworkLinks}. Every endpoint is a separate socket.
+ */
+public class UdpTransport implements Transport {
+
+    @Override
+    public Endpoint bind(int port, double lossRate, int averageDelay) throws IOException {
+        return new SocketEndpoint(NetworkLinks.openSocket(port, lossRate, averageDelay));
+    }
+
+    @Override
+    public Endpoint open(double lossRate, int averageDelay) throws IOException {
+        return new SocketEndpoint(NetworkLinks.openSocket(lossRate, averageDelay));
+    }
+
+    @Override
+    public boolean supportsChannels() {
+        return true;
+    }
+
+    /**
+     * Endpoint backed by a datagram socket. Datagrams are received into a
+     * buffer of the endpoint and copied out at their exact length.
+     */
+    private static class SocketEndpoint implements Endpoint {
+
+        private final DatagramSocket socket;
+        private final DatagramPacket packet;
+        private int timeoutMillis = -1;
+
+        private SocketEndpoint(DatagramSocket socket) {
+            this.socket = socket;
+            byte[] buffer = new byte[PacketCodecs.MAX_PACKET_SIZE];
+            this.packet = new DatagramPacket(buffer, buffer.length);
+        }
+
+        @Override
+        public SocketAddress getLocalAddress() {
+            return socket.getLocalSocketAddress();
+        }
+
+        @Override
+        public void send(byte[] data, SocketAddress target) throws IOException {
+            socket.send(new DatagramPacket(data, data.length, target));
+        }
+
+        @Override
+        public Datagram receive(int timeoutMillis) throws IOException {
+            if (this.timeoutMillis != timeoutMillis) {
+                socket.setSoTimeout(timeoutMillis);
+                this.timeoutMillis = timeoutMillis;
+            }
+
+            try {
+                packet.setLength(packet.getData().length);
+                socket.receive(packet);
+            } catch (SocketTimeoutException e) {
+                return null;
+            }
+
+            byte[] data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength());
+            return new Datagram(packet.getSocketAddress(), data);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return socket.isClosed();
+        }
+
+        @Override
+        public void close() {
+            socket.close();
+        }
+    }
+}
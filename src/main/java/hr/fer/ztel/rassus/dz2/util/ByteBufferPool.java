@@ -0,0 +1,54 @@
+package hr.fer.ztel.rassus.dz2.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A fixed-size pool of direct byte buffers. Buffers are allocated once,
+ * up front, and are cleared every time they are returned to the pool.
+ * If the pool is exhausted a new buffer is allocated, which is simply
+ * discarded on release if the pool is already full.
+ */
+public class ByteBufferPool {
+
+    private final BlockingQueue<ByteBuffer> buffers;
+    private final int bufferSize;
+
+    /**
+     * Creates a pool of <tt>count</tt> direct buffers, each with
+     * capacity of <tt>bufferSize</tt> bytes.
+     *
+     * @param count number of pooled buffers
+     * @param bufferSize capacity of each buffer
+     */
+    public ByteBufferPool(int count, int bufferSize) {
+        this.buffers = new ArrayBlockingQueue<>(count);
+        this.bufferSize = bufferSize;
+
+        for (int i = 0; i < count; i++) {
+            buffers.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+    }
+
+    /**
+     * Takes a cleared buffer from the pool.
+     *
+     * @return a cleared buffer
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Returns the buffer back to the pool.
+     *
+     * @param buffer buffer previously acquired from this pool
+     */
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        buffers.offer(buffer);
+    }
+
+}
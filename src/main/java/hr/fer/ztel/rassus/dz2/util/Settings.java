@@ -0,0 +1,159 @@
+package hr.fer.ztel.rassus.dz2.util;
+
+/**
+ * Node settings that can be overridden with system properties, for example
+ * <tt>-Drassus.server.mode=BLOCKING</tt>. Every setting has a default value
+ * that is used when the property is missing or can not be parsed.
+ */
+public class Settings {
+
+    /** Selects how the server thread receives datagrams, see {@code ServerThread.ReceiveMode}. */
+    public static final String SERVER_RECEIVE_MODE = "rassus.server.mode";
+
+    /** Number of measurements taken per second, may be fractional. */
+    public static final String CLIENT_MEASURE_RATE = "rassus.client.measureRate";
+    /** Maximum number of unconfirmed packets per neighbour. */
+    public static final String CLIENT_WINDOW_SIZE = "rassus.client.window";
+
+    /** Selects how measurements are sent to other nodes, see {@code ClientThread.SendMode}. */
+    public static final String CLIENT_SEND_MODE = "rassus.client.mode";
+    /** Number of random peers each node sends a packet to in gossip mode. */
+    public static final String GOSSIP_FANOUT = "rassus.gossip.fanout";
+    /** Number of times a packet is forwarded in gossip mode. */
+    public static final String GOSSIP_ROUNDS = "rassus.gossip.rounds";
+
+    /** Largest drift of the emulated clock of a node per second, as a fraction. */
+    public static final String CLOCK_JITTER = "rassus.clock.jitter";
+
+    /** Interval between two heartbeats of a node, in milliseconds; 0 disables failure detection and clock synchronization. */
+    public static final String MEMBERSHIP_HEARTBEAT_INTERVAL = "rassus.membership.heartbeatInterval";
+    /** Phi at which a peer is suspected to have failed. */
+    public static final String MEMBERSHIP_PHI_THRESHOLD = "rassus.membership.phiThreshold";
+    /** Interval between two checks of the network configuration for changes, in milliseconds; 0 disables them. */
+    public static final String MEMBERSHIP_RELOAD_INTERVAL = "rassus.membership.reloadInterval";
+
+    /** Maximum size of a packet with a batch of measurements, in bytes. */
+    public static final String CLIENT_MAX_PACKET_SIZE = "rassus.client.maxPacketSize";
+    /** Maximum time a measurement waits for a batch to fill up, in milliseconds. */
+    public static final String CLIENT_MAX_BATCH_DELAY = "rassus.client.maxBatchDelay";
+
+    /** Wire format used for sending packets, see {@code PacketCodecs.Format}. */
+    public static final String CODEC = "rassus.codec";
+
+    /** Source of measurements, see {@code Loaders}. */
+    public static final String LOADER_SOURCE = "rassus.loader.source";
+    /** Source-specific location of measurements, such as a file path. */
+    public static final String LOADER_LOCATION = "rassus.loader.location";
+
+    /** Model of simulated links, see {@code NetworkLinks.Model}. */
+    public static final String LINK_MODEL = "rassus.link.model";
+    /** Jitter of queued links, in milliseconds. */
+    public static final String LINK_JITTER = "rassus.link.jitter";
+    /** Sending delay of queued links, in milliseconds. */
+    public static final String LINK_SENDING_DELAY = "rassus.link.sendingDelay";
+    /** Bandwidth of queued links, in bytes per second. */
+    public static final String LINK_BANDWIDTH = "rassus.link.bandwidth";
+    /** Reordering probability of queued links. */
+    public static final String LINK_REORDER_RATE = "rassus.link.reorderRate";
+    /** Maximum queueing delay of queued links, in milliseconds. */
+    public static final String LINK_MAX_QUEUE_DELAY = "rassus.link.maxQueueDelay";
+
+    /** Directory in which each node keeps its measurement log, named after the node; empty, the default, disables the log. */
+    public static final String LOG_DIR = "rassus.log.dir";
+    /** Capacity of a segment of the measurement log, in bytes. */
+    public static final String LOG_SEGMENT_SIZE = "rassus.log.segmentSize";
+    /** Interval between two commits of stored measurements to the log, in milliseconds. */
+    public static final String LOG_COMMIT_INTERVAL = "rassus.log.commitInterval";
+
+    /** Interval between two dumps of node metrics to the log, in milliseconds; 0 disables them. */
+    public static final String METRICS_INTERVAL = "rassus.metrics.interval";
+
+    /** Disable instantiation. */
+    private Settings() {}
+
+    /**
+     * Returns the trimmed value of the given property or the default value.
+     *
+     * @param key property name
+     * @param defaultValue value returned if the property is not set
+     * @return the value of the property
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    /**
+     * Returns the integer value of the given property or the default value.
+     *
+     * @param key property name
+     * @param defaultValue value returned if the property is not set or invalid
+     * @return the integer value of the property
+     */
+    public static int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue);
+    }
+
+    /**
+     * Returns the long value of the given property or the default value.
+     *
+     * @param key property name
+     * @param defaultValue value returned if the property is not set or invalid
+     * @return the long value of the property
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the double value of the given property or the default value.
+     *
+     * @param key property name
+     * @param defaultValue value returned if the property is not set or invalid
+     * @return the double value of the property
+     */
+    public static double getDouble(String key, double defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the enum constant named by the given property, ignoring case,
+     * or the default value.
+     *
+     * @param key property name
+     * @param defaultValue value returned if the property is not set or invalid
+     * @param <E> enum type
+     * @return the enum constant named by the property
+     */
+    public static <E extends Enum<E>> E getEnum(String key, E defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Enum.valueOf(defaultValue.getDeclaringClass(), value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultValue;
+        }
+    }
+
+}